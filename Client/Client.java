@@ -7,13 +7,32 @@ import java.util.Scanner;
 
 public class Client {
     static final String MESSAGE_END_DELIM = "*End of Message*";
+    static final String BINARY_CODE = "*Binary*";
+    static final String BINARY_ARGUMENT = "binary";
     static final String host = "localhost";
 
+    // Binary protocol message types
+    static final byte MENU_PROMPT = 1;
+    static final byte PUZZLE_STATE = 2;
+    static final byte RESULT = 3;
+    static final byte ERROR = 4;
+    static final byte PUZZLE_DELTA = 5;
+
+    // Last puzzle received, updated in place by puzzle deltas
+    static char[][] puzzle;
+
+    /*
+     * Usage: java Client.Client [Port] [binary]
+     * 
+     * If "binary" is specified, the client requests the binary protocol, in
+     * which each server message is a sequence of length-prefixed frames.
+     */
     public static void main(String[] args) {
-        if (args.length != 1) {
+        if (args.length != 1 && !(args.length == 2 && args[1].equals(BINARY_ARGUMENT))) {
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
+        boolean binary = args.length == 2;
 
         Socket clientSocket = null;
         try {
@@ -24,10 +43,20 @@ public class Client {
              */
             clientSocket.setSoTimeout(5000);
 
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            BufferedInputStream inputStream = new BufferedInputStream(clientSocket.getInputStream());
             PrintStream out = new PrintStream(clientSocket.getOutputStream());
             System.out.println("Connected!");
 
+            /*
+             * Request the binary protocol in place of a username. The server
+             * replies to the welcome prompt already sent in text, then resends
+             * it as a frame.
+             */
+            if (binary) {
+                out.println(BINARY_CODE);
+                readTextMessage(inputStream);
+            }
+
             Scanner scanner = new Scanner(System.in);
             String clientInput;
 
@@ -37,7 +66,11 @@ public class Client {
              */
 
             do {
-                printServerOutput(in);
+                if (binary) {
+                    printServerFrames(new DataInputStream(inputStream));
+                } else {
+                    System.out.println(readTextMessage(inputStream));
+                }
                 clientInput = scanner.nextLine();
                 out.println(clientInput);
             } while (!clientInput.equals("*Exit*"));
@@ -54,19 +87,93 @@ public class Client {
      * The server response is a string terminated with an exit line:
      * "*End of Message*".
      */
-    private static void printServerOutput(BufferedReader in) {
+    private static String readTextMessage(InputStream in) {
         StringBuilder stringBuilder = new StringBuilder();
         String serverOutputLine;
         try {
-            serverOutputLine = in.readLine();
+            serverOutputLine = readLine(in);
             while (serverOutputLine != null && !serverOutputLine.equals(MESSAGE_END_DELIM)) {
                 stringBuilder.append(serverOutputLine).append("\n");
-                serverOutputLine = in.readLine();
+                serverOutputLine = readLine(in);
             }
-            System.out.println(stringBuilder.toString());
         } catch (IOException e) {
             System.err.println("Error: could not get server output.");
+        }
+        return stringBuilder.toString();
+    }
+
+    /*
+     * Read a single UTF-8 line, without reading ahead of it (so that binary
+     * frames following the line are left in the stream).
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("UTF-8");
+    }
+
+    /*
+     * Print the frames of a server response in the binary protocol. Each frame
+     * is a 1 byte message type, a 4 byte payload length and the UTF-8 payload.
+     * The response ends with a menu prompt frame.
+     * 
+     * A puzzle delta frame (sent when another player in a room guesses) holds
+     * the row, column and new character of each changed cell (each an unsigned
+     * short), which are applied to the last puzzle received before it is
+     * reprinted.
+     */
+    private static void printServerFrames(DataInputStream in) {
+        try {
+            byte type;
+            do {
+                type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+
+                if (type == PUZZLE_DELTA) {
+                    printPuzzleDelta(payload);
+                    continue;
+                }
+                String text = new String(payload, "UTF-8");
+                if (type == PUZZLE_STATE) {
+                    String[] rows = text.strip().split("\n");
+                    puzzle = new char[rows.length][];
+                    for (int i = 0; i < rows.length; i++) {
+                        puzzle[i] = rows[i].toCharArray();
+                    }
+                }
+                System.out.println(text);
+            } while (type != MENU_PROMPT);
+        } catch (IOException e) {
+            System.err.println("Error: could not get server output.");
+        }
+    }
+
+    private static void printPuzzleDelta(byte[] delta) {
+        if (puzzle == null) {
             return;
         }
+        // Each cell is 3 unsigned shorts; cells outside the puzzle are ignored
+        for (int i = 0; i + 5 < delta.length; i += 6) {
+            int row = getShort(delta, i);
+            int column = getShort(delta, i + 2);
+            if (row < puzzle.length && column < puzzle[row].length) {
+                puzzle[row][column] = (char) getShort(delta, i + 4);
+            }
+        }
+        System.out.println();
+        for (char[] row : puzzle) {
+            System.out.println(row);
+        }
+    }
+
+    private static int getShort(byte[] buffer, int index) {
+        return (buffer[index] & 0xFF) << 8 | (buffer[index + 1] & 0xFF);
     }
-}
\ No newline at end of file
+}
@@ -10,11 +10,15 @@ import java.util.Random;
 
 /**
  * Represents a database server that listens for incoming requests on a
- * specified port.
+ * specified port. Requests may also be made by calling the word methods
+ * directly, which are synchronized so that they can be called from many
+ * threads.
  */
 public class DatabaseServer {
     private static final String USAGE = "Usage: java DatabaseServer [port]";
     private static final String WORD_FILE_PATH = "./DatabaseServer/words.txt";
+    // Largest trace dump that fits in a single datagram
+    private static final int MAX_TRACE_DUMP_LENGTH = 60000;
     protected DatagramSocket socket = null;
     private static ArrayList<String> data;
     private Random randomizer = new Random();
@@ -30,6 +34,14 @@ public class DatabaseServer {
         socket = new DatagramSocket(port);
     }
 
+    /**
+     * Constructs a DatabaseServer object without a socket, to be called
+     * directly from the same process (see GameServer.Embedded). The words must
+     * be loaded with getWords() first.
+     */
+    public DatabaseServer() {
+    }
+
     /**
      * Starts the program.
      * 
@@ -91,20 +103,33 @@ public class DatabaseServer {
     }
 
     /**
-     * Listens for incoming requests and serves them indefinitely.
+     * Listens for incoming requests and serves them indefinitely. A request may
+     * carry a trace ID, in which case it is recorded as a span of that trace.
      */
     public void serve() {
         System.out.println("Listening for incoming requests ...");
+        byte[] inputbuf = new byte[1000];
         while (true) {
             try {
-                byte[] inputbuf = new byte[1000];
-                byte[] outputbuf = new byte[1000];
+                byte[] outputbuf;
 
                 DatagramPacket udpRequestPacket = new DatagramPacket(inputbuf, inputbuf.length);
                 socket.receive(udpRequestPacket);
 
-                String dataString = parsePacket(
-                        new String(udpRequestPacket.getData(), 0, udpRequestPacket.getLength()));
+                String request = new String(udpRequestPacket.getData(), 0, udpRequestPacket.getLength());
+                String traceId = RequestTracer.traceIdOf(request);
+                long start = System.nanoTime();
+
+                String command = RequestTracer.strip(request);
+                String dataString;
+                if (command.isEmpty()) {
+                    dataString = "error detected";
+                } else {
+                    dataString = parsePacket(command);
+                    if (traceId != null) {
+                        RequestTracer.record(traceId, "DatabaseServer", command.substring(0, 1), start);
+                    }
+                }
                 outputbuf = dataString.getBytes();
                 System.out.println("Sending to game server: " + dataString);
 
@@ -126,11 +151,14 @@ public class DatabaseServer {
      * @param command - The command received in the packet.
      * @return - The result of the command processing.
      */
-    public String parsePacket(String command) {
+    public synchronized String parsePacket(String command) {
         System.out.println("\nIncoming command: " + command);
-        String commandParts[] = command.split(";", 2);
-        char function = commandParts[0].toCharArray()[0];
-        String word = commandParts[1];
+        int separator = command.indexOf(';');
+        if (separator != 1) {
+            return "error detected";
+        }
+        char function = command.charAt(0);
+        String word = command.substring(separator + 1);
 
         switch (function) {
             case 'A':
@@ -143,6 +171,8 @@ public class DatabaseServer {
                 return randomWord(word);
             case 'E':
                 return randomWordLength(word);
+            case 'T':
+                return RequestTracer.dump(MAX_TRACE_DUMP_LENGTH);
             default:
                 return "error detected";
         }
@@ -153,7 +183,7 @@ public class DatabaseServer {
      * 
      * @param word The word to add to the database.
      */
-    public String addWord(String word) {
+    public synchronized String addWord(String word) {
         if (findWord(word) == "0") {
             data.add(word);
             updateDataBase();
@@ -184,7 +214,7 @@ public class DatabaseServer {
      * 
      * @param word - The word to be removed.
      */
-    public String removeWord(String word) {
+    public synchronized String removeWord(String word) {
         for (String a : data) {
             if (a.trim().equalsIgnoreCase(word.trim())) {
                 data.remove(word.toLowerCase());
@@ -202,7 +232,7 @@ public class DatabaseServer {
      * @param word The word to search for.
      * @return The word if found in the database, otherwise null.
      */
-    public String findWord(String word) {
+    public synchronized String findWord(String word) {
 
         for (String a : data) {
             if (a.trim().equalsIgnoreCase(word.trim())) {
@@ -216,21 +246,24 @@ public class DatabaseServer {
      * Generates a random word from the database that contains the specified
      * substring.
      * 
-     * @param a - The substring to match in the generated word.
+     * @param a - The substring to match in the generated word, optionally
+     *          followed by ";seed" to choose the same word for the same seed.
      * @return - A random word containing the specified substring, or an empty
      *         string if no such word is found.
      */
-    public String randomWord(String a) {
+    public synchronized String randomWord(String a) {
         String word = "";
+        Random random = randomizerFor(a);
+        String substring = withoutSeed(a);
 
         ArrayList<String> filteredwords = data
                 .stream()
-                .filter(c -> c.contains(a))
+                .filter(c -> c.contains(substring))
                 .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
 
         if (!filteredwords.isEmpty()) {
 
-            word = filteredwords.get(randomizer.nextInt(filteredwords.size()));
+            word = filteredwords.get(random.nextInt(filteredwords.size()));
         }
         return word;
     }
@@ -238,15 +271,17 @@ public class DatabaseServer {
     /**
      * Generates a random word from the database with the specified length.
      * 
-     * @param a - The length of the word to generate.
+     * @param a - The length of the word to generate, optionally followed by
+     *          ";seed" to choose the same word for the same seed.
      * @return - A random word with the specified length, or an empty string if no
      *         such word is found.
      */
-    public String randomWordLength(String a) {
+    public synchronized String randomWordLength(String a) {
 
         String word = "";
+        Random random = randomizerFor(a);
 
-        int length = Integer.parseInt(a);
+        int length = Integer.parseInt(withoutSeed(a));
 
         ArrayList<String> filteredwords = data
                 .stream()
@@ -255,9 +290,30 @@ public class DatabaseServer {
 
         if (!filteredwords.isEmpty()) {
 
-            word = filteredwords.get(randomizer.nextInt(filteredwords.size()));
+            word = filteredwords.get(random.nextInt(filteredwords.size()));
         }
 
         return word;
     }
+
+    /**
+     * Gets the randomizer for a request: a new one seeded by the request's
+     * seed, if it carries one, so that the same words are chosen for the same
+     * seed while the database is unchanged.
+     * 
+     * @param a - The request's argument, optionally followed by ";seed".
+     * @return - The randomizer.
+     */
+    private Random randomizerFor(String a) {
+        int separator = a.indexOf(';');
+        if (separator < 0) {
+            return randomizer;
+        }
+        return new Random(Long.parseLong(a.substring(separator + 1)));
+    }
+
+    private static String withoutSeed(String a) {
+        int separator = a.indexOf(';');
+        return separator < 0 ? a : a.substring(0, separator);
+    }
 }
\ No newline at end of file
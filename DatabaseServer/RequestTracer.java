@@ -0,0 +1,93 @@
+package DatabaseServer;
+
+/**
+ * Records the word database's spans of sampled requests, in an in-memory ring
+ * buffer that is dumped on demand (the 'T' request).
+ *
+ * The format matches the game server's tracer (GameServer.Tracer): a request
+ * carrying a trace ID is prefixed with "@traceId ", and each span is recorded
+ * as: traceId service name start(ms since epoch) duration(us). This small copy
+ * keeps the microservice deployable without the game server's package.
+ */
+class RequestTracer {
+    private static final String TRACE_PREFIX = "@";
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final String[] ring = new String[BUFFER_SIZE];
+    private static int next;
+
+    /**
+     * Gets the trace ID carried by a request.
+     *
+     * @param request - The request, possibly carrying a trace ID.
+     * @return - The trace ID, or null if the request carries none.
+     */
+    static String traceIdOf(String request) {
+        int end = request.indexOf(' ');
+        if (!request.startsWith(TRACE_PREFIX) || end < 0) {
+            return null;
+        }
+        return request.substring(TRACE_PREFIX.length(), end);
+    }
+
+    /**
+     * Removes the trace ID (if any) from a request.
+     *
+     * @param request - The request, possibly carrying a trace ID.
+     * @return - The request without the trace ID.
+     */
+    static String strip(String request) {
+        if (traceIdOf(request) == null) {
+            return request;
+        }
+        return request.substring(request.indexOf(' ') + 1);
+    }
+
+    /**
+     * Records a span of a trace.
+     *
+     * @param traceId    - The trace ID.
+     * @param service    - The service the span belongs to.
+     * @param name       - The name of the span.
+     * @param startNanos - The start time, from System.nanoTime().
+     */
+    static void record(String traceId, String service, String name, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        long startMillis = System.currentTimeMillis() - durationNanos / 1_000_000;
+        String span = traceId + " " + service + " " + name + " " + startMillis + " "
+                + durationNanos / 1_000;
+        synchronized (ring) {
+            ring[next] = span;
+            next = (next + 1) % ring.length;
+        }
+    }
+
+    /**
+     * Dumps the most recent spans, oldest first, one per line.
+     *
+     * @param maxLength - The maximum length of the dump; older spans are left
+     *                  out to fit.
+     * @return - The recorded spans.
+     */
+    static String dump(int maxLength) {
+        StringBuilder stringBuilder = new StringBuilder();
+        synchronized (ring) {
+            // Walk backwards from the newest span, then reverse the lines
+            int length = 0;
+            int first = next;
+            for (int i = 1; i <= ring.length; i++) {
+                String span = ring[(next - i + ring.length) % ring.length];
+                if (span == null || length + span.length() + 1 > maxLength) {
+                    break;
+                }
+                length += span.length() + 1;
+                first = (next - i + ring.length) % ring.length;
+            }
+            for (int i = first; length > 0; i = (i + 1) % ring.length) {
+                stringBuilder.append(ring[i]).append('\n');
+                length -= ring[i].length() + 1;
+            }
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package GameServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Client of the user account microservice.
+ */
+interface AccountService {
+    /**
+     * A "save" (snapshot) or "append" (events) record of a batch save.
+     */
+    class Record {
+        final String operation;
+        final String username;
+        final String data;
+
+        Record(String operation, String username, String data) {
+            this.operation = operation;
+            this.username = username;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Claims a user's login and loads their data.
+     *
+     * @param username - The username to open a session for.
+     * @return - "0" if the user is already logged in, otherwise the login
+     *         result (1 for an existing user, 2 for a new user) followed by a
+     *         newline and the user data.
+     * @throws IOException - If the microservice could not be reached, or the
+     *                     user data could not be loaded.
+     */
+    String openSession(String username) throws IOException;
+
+    /**
+     * Loads a user's data, without claiming their login.
+     *
+     * @param username - The username whose data to load.
+     * @return - The user data.
+     * @throws IOException - If the microservice could not be reached, or the
+     *                     user data could not be loaded.
+     */
+    String load(String username) throws IOException;
+
+    /**
+     * Renews this game server instance's lease on the logins it holds.
+     *
+     * @throws IOException - If the microservice could not be reached.
+     */
+    void renewLease() throws IOException;
+
+    /**
+     * Releases every login held by this game server instance, e.g. ones left
+     * over from before it restarted.
+     *
+     * @return - The number of logins released.
+     * @throws IOException - If the microservice could not be reached.
+     */
+    int releaseLogins() throws IOException;
+
+    /**
+     * Releases a user's login.
+     *
+     * @param username - The username to log out.
+     * @return - 1 if the user was logged out, 0 if they were not logged in.
+     * @throws IOException - If the microservice could not be reached.
+     */
+    int logout(String username) throws IOException;
+
+    /**
+     * Saves a batch of records.
+     *
+     * @param records - The records, applied in order.
+     * @return - The number of records saved successfully.
+     * @throws IOException - If the microservice could not be reached.
+     */
+    int saveBatch(ArrayList<Record> records) throws IOException;
+}
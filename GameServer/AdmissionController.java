@@ -0,0 +1,156 @@
+package GameServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Decides whether accepted client connections are served, and runs them on a
+ * fixed size thread pool.
+ *
+ * A connection is rejected with a "server busy" message, and closed
+ * immediately, when either:
+ *
+ * 1. Its source address already has the maximum number of connections
+ * (queued or being served).
+ * 2. All threads are busy and the queue of waiting connections is full.
+ */
+class AdmissionController {
+    private final ThreadPoolExecutor threadPool;
+    private final Function<Socket, Runnable> handlerFactory;
+    private final int sourceConnectionLimit;
+    private final byte[] busyMessage;
+    private final byte[] sourceLimitMessage;
+
+    // Source address -> number of connections queued or being served
+    private final ConcurrentHashMap<InetAddress, Integer> sourceConnections = new ConcurrentHashMap<>();
+
+    private final AtomicLong busyRejections = new AtomicLong();
+    private final AtomicLong sourceLimitRejections = new AtomicLong();
+
+    /**
+     * Constructs an admission controller.
+     *
+     * @param threadCount           - The number of connections served at once.
+     * @param queueLimit            - The number of connections that may wait
+     *                              for a thread.
+     * @param sourceConnectionLimit - The number of connections allowed from a
+     *                              single source address.
+     * @param retrySeconds          - The delay suggested to rejected clients.
+     * @param handlerFactory        - Creates the task serving a connection.
+     */
+    public AdmissionController(int threadCount, int queueLimit, int sourceConnectionLimit,
+            int retrySeconds, Function<Socket, Runnable> handlerFactory) {
+        this.threadPool = new ThreadPoolExecutor(threadCount, threadCount, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueLimit));
+        this.handlerFactory = handlerFactory;
+        this.sourceConnectionLimit = sourceConnectionLimit;
+        this.busyMessage = encodeRejection(Constants.SERVER_BUSY, retrySeconds);
+        this.sourceLimitMessage = encodeRejection(Constants.SOURCE_LIMIT_REACHED, retrySeconds);
+    }
+
+    private static byte[] encodeRejection(String reason, int retrySeconds) {
+        return ("\n" + reason + " Retry in " + retrySeconds + " s."
+                + Constants.MESSAGE_END_DELIM + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Queues a connection to be served, or rejects it.
+     *
+     * @param socket - The accepted client connection.
+     */
+    public void admit(Socket socket) {
+        InetAddress source = socket.getInetAddress();
+        if (this.sourceConnections.merge(source, 1, Integer::sum) > this.sourceConnectionLimit) {
+            release(source);
+            this.sourceLimitRejections.incrementAndGet();
+            reject(socket, this.sourceLimitMessage);
+            return;
+        }
+
+        Runnable handler = this.handlerFactory.apply(socket);
+        try {
+            this.threadPool.execute(() -> {
+                try {
+                    handler.run();
+                } finally {
+                    release(source);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(source);
+            this.busyRejections.incrementAndGet();
+            reject(socket, this.busyMessage);
+        }
+    }
+
+    /**
+     * Decrements a source's connection count, forgetting sources with none.
+     */
+    private void release(InetAddress source) {
+        this.sourceConnections.computeIfPresent(source,
+                (address, connections) -> connections == 1 ? null : connections - 1);
+    }
+
+    /**
+     * Sends a rejection message and closes the connection.
+     */
+    private void reject(Socket socket, byte[] message) {
+        System.out.println("Rejected connection from " + socket.getInetAddress().getHostAddress()
+                + " (queued: " + getQueueDepth() + ", rejected: " + getBusyRejections()
+                + " busy, " + getSourceLimitRejections() + " per-source limit)");
+        try (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(message);
+            out.flush();
+        } catch (IOException e) {
+            // The client has already disconnected
+        }
+    }
+
+    /**
+     * Gets the number of connections waiting for a thread.
+     *
+     * @return - The queue depth.
+     */
+    public int getQueueDepth() {
+        return this.threadPool.getQueue().size();
+    }
+
+    /**
+     * Gets the number of connections currently being served.
+     *
+     * @return - The number of busy threads.
+     */
+    public int getActiveCount() {
+        return this.threadPool.getActiveCount();
+    }
+
+    /**
+     * Gets the number of connections rejected because the queue was full.
+     *
+     * @return - The number of busy rejections.
+     */
+    public long getBusyRejections() {
+        return this.busyRejections.get();
+    }
+
+    /**
+     * Gets the number of connections rejected because their source address
+     * reached its connection limit.
+     *
+     * @return - The number of per-source rejections.
+     */
+    public long getSourceLimitRejections() {
+        return this.sourceLimitRejections.get();
+    }
+}
@@ -0,0 +1,104 @@
+package GameServer;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker around a microservice client.
+ *
+ * The breaker opens once the number of consecutive failed requests reaches a
+ * threshold. While it is open, requests should fail immediately instead of
+ * waiting for the microservice to time out, and the microservice is probed in
+ * the background. The breaker closes again as soon as a probe succeeds.
+ */
+class CircuitBreaker {
+    /**
+     * A request used to check whether the microservice has recovered.
+     */
+    interface Probe {
+        void run() throws IOException;
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long probeInterval;
+    private final Probe probe;
+    private final ScheduledExecutorService prober;
+
+    private int consecutiveFailures;
+    private volatile boolean open;
+
+    /**
+     * Constructs a closed circuit breaker.
+     *
+     * @param name             - The name of the microservice, for logging.
+     * @param failureThreshold - The number of consecutive failures that opens
+     *                         the breaker.
+     * @param probeInterval    - The delay, in milliseconds, between probes
+     *                         while the breaker is open.
+     * @param probe            - The request used to probe the microservice.
+     */
+    public CircuitBreaker(String name, int failureThreshold, long probeInterval, Probe probe) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.probeInterval = probeInterval;
+        this.probe = probe;
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks whether requests should currently fail fast.
+     *
+     * @return - True if the breaker is open.
+     */
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * Records a successful request, resetting the failure count.
+     */
+    public synchronized void recordSuccess() {
+        this.consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failed request, opening the breaker if the threshold is reached.
+     */
+    public synchronized void recordFailure() {
+        if (++this.consecutiveFailures >= this.failureThreshold && !this.open) {
+            this.open = true;
+            System.out.println("Circuit breaker for " + this.name + " opened after "
+                    + this.consecutiveFailures + " consecutive failures.");
+            scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe() {
+        this.prober.schedule(this::probe, this.probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Probes the microservice, closing the breaker if it responds, or
+     * scheduling the next probe otherwise.
+     */
+    private void probe() {
+        try {
+            this.probe.run();
+        } catch (IOException | RuntimeException e) {
+            scheduleProbe();
+            return;
+        }
+        synchronized (this) {
+            this.consecutiveFailures = 0;
+            this.open = false;
+        }
+        System.out.println("Circuit breaker for " + this.name + " closed.");
+    }
+}
@@ -0,0 +1,130 @@
+package GameServer;
+
+/**
+ * Parses commands of the form "command;argument" in place, shared by the game
+ * server and its microservices.
+ *
+ * Fields are located by index rather than split into new strings, and commands
+ * are matched against a table of known names, so that the matching name can be
+ * used to dispatch without allocating. Only the arguments a caller actually
+ * uses need to be copied out of the input.
+ */
+public class CommandParser {
+    public static final char SEPARATOR = ';';
+
+    // Lookup table of the characters reserved to represent the puzzle
+    private static final boolean[] RESERVED = new boolean[128];
+
+    static {
+        for (int i = 0; i < Constants.RESERVED_CHARS.length(); i++) {
+            RESERVED[Constants.RESERVED_CHARS.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * Finds the end of the field starting at the given index.
+     *
+     * @param input - The input to parse.
+     * @param start - The index of the field's first character.
+     * @return - The index of the separator ending the field, or the input's
+     *         length if it is the last field.
+     */
+    public static int fieldEnd(CharSequence input, int start) {
+        int length = input.length();
+        for (int i = start; i < length; i++) {
+            if (input.charAt(i) == SEPARATOR) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Matches a field exactly against a table of names.
+     *
+     * @param input - The input to parse.
+     * @param start - The index of the field's first character.
+     * @param end   - The index just past the field's last character.
+     * @param names - The names to match.
+     * @return - The matching name from the table, or null if there is none.
+     */
+    public static String lookup(CharSequence input, int start, int end, String[] names) {
+        for (String name : names) {
+            if (regionEquals(input, start, end, name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Matches a field, ignoring surrounding whitespace, against a table of
+     * names.
+     *
+     * @param input - The input to parse.
+     * @param start - The index of the field's first character.
+     * @param end   - The index just past the field's last character.
+     * @param names - The names to match.
+     * @return - The matching name from the table, or null if there is none.
+     */
+    public static String lookupTrimmed(CharSequence input, int start, int end, String[] names) {
+        while (start < end && Character.isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(input.charAt(end - 1))) {
+            end--;
+        }
+        return lookup(input, start, end, names);
+    }
+
+    private static boolean regionEquals(CharSequence input, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (input.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the input contains any character reserved to represent
+     * the puzzle ('+', '-' or '.').
+     *
+     * @param input - The input to check.
+     * @return - True if a reserved character was found.
+     */
+    public static boolean hasReservedChar(CharSequence input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < RESERVED.length && RESERVED[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every occurrence of a character from a string.
+     *
+     * @param input - The string to remove the character from.
+     * @param c     - The character to remove.
+     * @return - The string without the character; the same string if it does
+     *         not contain it.
+     */
+    public static String remove(String input, char c) {
+        int index = input.indexOf(c);
+        if (index < 0) {
+            return input;
+        }
+        StringBuilder stringBuilder = new StringBuilder(input.length() - 1);
+        int from = 0;
+        for (; index >= 0; index = input.indexOf(c, from)) {
+            stringBuilder.append(input, from, index);
+            from = index + 1;
+        }
+        return stringBuilder.append(input, from, input.length()).toString();
+    }
+}
@@ -3,20 +3,155 @@ package GameServer;
 public class Constants {
         public static final int BUFFER_LIMIT = 1000; // UDP buffer limit
         public static final String USAGE = "java Game [Port] [Word Microservice Port]";
+        public static final String EMBEDDED_USAGE = "java Embedded [Port]";
 
         public static final String USER_DATA_DIRECTORY = "./UserData/";
         public static final int UAS_PORT = 8081; // Port of user account microservice
 
+        /*
+         * Horizontal scaling. Each game server instance holds a lease on its
+         * users' logins, renewed every LOGIN_LEASE_RENEW_INTERVAL ms; the user
+         * account microservice releases the logins of an instance that hasn't
+         * renewed its lease for LOGIN_LEASE_TIMEOUT ms (e.g. it crashed). The
+         * hosts of the microservices may be overridden with the game.accountHost
+         * and game.wordHost system properties.
+         */
+        public static final long LOGIN_LEASE_TIMEOUT = 15000;
+        public static final long LOGIN_LEASE_RENEW_INTERVAL = 5000;
+        public static final String UAS_HOST = System.getProperty("game.accountHost", "localhost");
+        public static final String WORD_HOST = System.getProperty("game.wordHost", "localhost");
+
+        /*
+         * Admission control for incoming game connections. May be overridden
+         * with the corresponding system property (e.g. -Dgame.threads=40).
+         */
+        public static final int THREAD_COUNT = Integer.getInteger("game.threads", 20);
+        public static final int ACCEPT_QUEUE_LIMIT = Integer.getInteger("game.acceptQueueLimit", 50);
+        public static final int SOURCE_CONNECTION_LIMIT = Integer.getInteger("game.sourceConnectionLimit", 10);
+        public static final int BUSY_RETRY_SECONDS = Integer.getInteger("game.busyRetrySeconds", 5);
+
+        /*
+         * Client sessions expire after SESSION_IDLE_TIMEOUT without input, or
+         * SESSION_ABSOLUTE_TIMEOUT after connecting (ms). May be overridden with
+         * the corresponding system property. Expiry is checked every
+         * SESSION_TIMER_TICK ms, on a timer wheel of SESSION_TIMER_BUCKETS ticks.
+         */
+        public static final long SESSION_IDLE_TIMEOUT = Long.getLong("game.sessionIdleTimeout", 10 * 60 * 1000);
+        public static final long SESSION_ABSOLUTE_TIMEOUT = Long.getLong("game.sessionAbsoluteTimeout",
+                        4 * 60 * 60 * 1000);
+        public static final long SESSION_TIMER_TICK = 1000;
+        public static final int SESSION_TIMER_BUCKETS = 512;
+
+        /*
+         * Requests allowed per minute, per username, for word database
+         * mutations (Add/Remove), word queries ('?') and new games (including
+         * rooms), and in total across the game server, which protects the word
+         * database microservice. May be overridden with the corresponding
+         * system property.
+         */
+        public static final int MUTATIONS_PER_MINUTE = Integer.getInteger("game.mutationsPerMinute", 10);
+        public static final int QUERIES_PER_MINUTE = Integer.getInteger("game.queriesPerMinute", 60);
+        public static final int NEW_GAMES_PER_MINUTE = Integer.getInteger("game.newGamesPerMinute", 10);
+        public static final int GLOBAL_MUTATIONS_PER_MINUTE = Integer.getInteger(
+                        "game.globalMutationsPerMinute", 120);
+        public static final int GLOBAL_QUERIES_PER_MINUTE = Integer.getInteger(
+                        "game.globalQueriesPerMinute", 6000);
+        public static final int GLOBAL_NEW_GAMES_PER_MINUTE = Integer.getInteger(
+                        "game.globalNewGamesPerMinute", 600);
+
+        /*
+         * Estimated heap (bytes) the game server's sessions may retain before
+         * the game state of sessions idle for at least SESSION_UNLOAD_IDLE_TIME
+         * (ms) is saved and unloaded, checked every SESSION_MEMORY_CHECK_INTERVAL
+         * ms. May be overridden with the corresponding system property.
+         */
+        public static final long SESSION_MEMORY_BUDGET = Long.getLong("game.sessionMemoryBudget",
+                        256L * 1024 * 1024);
+        public static final long SESSION_UNLOAD_IDLE_TIME = Long.getLong("game.sessionUnloadIdleTime",
+                        60 * 1000);
+        public static final long SESSION_MEMORY_CHECK_INTERVAL = 5000;
+
+        // Local port serving the game server's metrics in plaintext
+        public static final int METRICS_PORT = Integer.getInteger("game.metricsPort", 9091);
+
+        /*
+         * Fraction of client commands traced (may be overridden with the
+         * game.traceSampleRate system property), and the number of spans kept
+         * in each process's trace buffer.
+         */
+        public static final double TRACE_SAMPLE_RATE = Double.parseDouble(
+                        System.getProperty("game.traceSampleRate", "0.01"));
+        public static final int TRACE_BUFFER_SIZE = 4096;
+
         public static final int MAX_WORD_COUNT = 15;
         public static final int UDP_TIMEOUT = 1000;
 
+        /*
+         * Word database circuit breaker: consecutive failures that open it, and
+         * the delay between background probes (ms) while it is open. Queries are
+         * then answered from a cache of this many recently seen words.
+         */
+        public static final int WORD_SERVICE_FAILURE_THRESHOLD = 3;
+        public static final long WORD_SERVICE_PROBE_INTERVAL = 2000;
+        public static final int WORD_CACHE_SIZE = 1024;
+
+        // Threads sending puzzle updates to the members of shared game rooms
+        public static final int ROOM_BROADCAST_THREADS = 4;
+
+        /*
+         * Puzzle generation: overall time limit (ms), and number of candidate
+         * leaves requested for each distinct character of the stem. A fixed seed
+         * may be set with the game.puzzleSeed system property to reproduce a
+         * puzzle; otherwise each puzzle gets a random seed, which is logged.
+         */
+        public static final long PUZZLE_GENERATION_DEADLINE = 5000;
+        public static final int LEAF_CANDIDATES_PER_LETTER = 2;
+        public static final Long PUZZLE_SEED = Long.getLong("game.puzzleSeed");
+
+        /*
+         * Puzzle width: by default, the stem is centred in twice the longest
+         * leaf's length. With game.tightPuzzleLayout, each puzzle is instead
+         * only as wide as its leaves reach either side of the stem. In either
+         * layout, the generator only places leaves that keep the puzzle within
+         * the maximum width (in characters, not counting the row terminator).
+         */
+        public static final boolean TIGHT_PUZZLE_LAYOUT = Boolean.getBoolean("game.tightPuzzleLayout");
+        public static final int MAX_PUZZLE_WIDTH = Integer.getInteger("game.maxPuzzleWidth", Integer.MAX_VALUE);
+
+        // Number of words in the daily puzzle
+        public static final int DAILY_WORD_COUNT = Integer.getInteger("game.dailyWordCount", 5);
+
+        // Write-behind saving: maximum age of an unsent save (ms), and maximum
+        // number of users saved per connection to the user account microservice
+        public static final long SAVE_FLUSH_INTERVAL = 1000;
+        public static final int SAVE_BATCH_LIMIT = 50;
+
+        /*
+         * Guesses are saved as events appended to the user's event log, of the
+         * form: Guess;attempts;guess. A full snapshot of the game state is saved
+         * once this many guesses have been logged since the last snapshot.
+         */
+        public static final String GUESS_EVENT = "Guess";
+        public static final int SNAPSHOT_INTERVAL = 20;
+
+        /*
+         * A game in play is saved as a single line: this prefix followed by its
+         * Base64 encoded binary snapshot, which starts with the format version.
+         * Version 2 added the day of a daily puzzle; version 1 is still read.
+         */
+        public static final String BINARY_GAME_PREFIX = "Game;";
+        public static final int GAME_STATE_VERSION = 2;
+
         // Various key codes to faciliate user menu navigation
         public static final String MESSAGE_END_DELIM = "\n*End of Message*";
         public static final String EXIT_CODE = "*Exit*";
         public static final String SAVE_CODE = "*Save*";
 
-        // Regex to prevent user from guessing strings with '+', '-', or '.'
-        public static final String NO_SPECIAL_CHAR_REGEX = ".*[+\\-\\.].*";
+        // Sent by a client in place of its username to switch to binary frames
+        public static final String BINARY_CODE = "*Binary*";
+
+        // Characters users may not guess, as they are used to represent the puzzle
+        public static final String RESERVED_CHARS = "+-.";
 
         /*
          * User menu and game menu. User is either playing a game or idle.
@@ -29,6 +164,9 @@ public class Constants {
                         "Remove;WordName           //Remove a word from the database.\n" +
                         "New Game;x                //Start a new game with x words.\n" +
                         "Continue;*                //Continue existing game.\n" +
+                        "Create Room;x             //Start a shared game with x words.\n" +
+                        "Join Room;RoomId          //Join another player's shared game.\n" +
+                        "Daily;*                   //Play today's puzzle, the same for every player.\n" +
                         "*Exit*                    //Exit Game.";
 
         public static final String GAME_MENU = "\nEnter a command from the list below " +
@@ -38,6 +176,13 @@ public class Constants {
                         "?WordName                 //Check if word exists in database.\n" +
                         "*Save*                    //Save and return to main menu.";
 
+        public static final String ROOM_MENU = "\nEnter a command from the list below " +
+                        "(each command must adhere to the specified syntax - CASE SENSITIVE):\n" +
+                        "Letter                    //Guess a letter.\n" +
+                        "WordName                  //Guess a word.\n" +
+                        "?WordName                 //Check if word exists in database.\n" +
+                        "*Save*                    //Leave the room and return to main menu.";
+
         public static final String IDLE_STATE = "Idle";
         public static final String PLAY_STATE = "Play";
 
@@ -50,18 +195,27 @@ public class Constants {
         // Error messages regarding network issues
         public static final String SOCKET_ERROR_OPEN_WORD = "Could not create socket to word database microservice.";
         public static final String SOCKET_ERROR_OPEN_GAMESERVER = "Could not create server socket.";
+        public static final String SOCKET_ERROR_OPEN_METRICS = "Could not create metrics endpoint socket.";
+        public static final String UNKNOWN_INSTANCE_HOST = "Could not determine host name; set -Dgame.instanceId "
+                        + "if other game servers share the user account microservice.";
         public static final String SOCKET_ERROR_CLOSE = "Error while attempting to close socket.";
+        public static final String SERVER_BUSY = "Server busy.";
+        public static final String SOURCE_LIMIT_REACHED = "Too many connections from your address.";
         public static final String CANT_COMMUNICATE_CLIENT = "Error: could not communicate with client.";
         public static final String CANT_COMMUNICATE_UAS = "Error, could not contact user account microservice.";
         public static final String CANT_COMMUNICATE_WDBS = "Could not contact word database microservice.\n" +
                         "Returning to previous menu.";
+        public static final String WORD_SERVICE_UNAVAILABLE = "Word database microservice is unavailable.\n" +
+                        "Try again later.";
 
         // Error messages regarding user login
         public static final String NO_CLIENT_INPUT = "No client input.";
         public static final String DUPLICATE_LOGIN = "User already logged in.";
+        public static final String SESSION_TIMED_OUT = "Session timed out.";
 
         // Error messages regarding loading user data
         public static final String CANT_CREATE_USER_FILE = "Could not create user data file.";
+        public static final String CANT_SAVE_GAME = "Couldn't save game.";
         public static final String PREMATURE_EOF = "End of file reached prematurely.";
         public static final String VALUE_PARSE_FAIL = "Failed to parse value in user data.";
         public static final String NON_INTEGER_VALUE = "Parsed value is not an integer.";
@@ -71,4 +225,9 @@ public class Constants {
         public static final String WORD_COUNT_NOT_IN_RANGE = "Word count argument exceeds allowed range.";
         public static final String INVALID_WORD_COUNT = "Word count argument is not a number.";
         public static final String NO_EXISTING_GAME = "No existing game found.";
+        public static final String NO_SUCH_ROOM = "No room found with that ID.";
+        public static final String CANT_RELOAD_GAME = "Could not load your game. Please reconnect.";
+        public static final String RATE_LIMITED = "Slow down: too many %s. Try again in %d second(s).";
+        public static final String ROOM_GAME_OVER = "The room's game is over.";
+        public static final String PUZZLE_GENERATION_TIMEOUT = "Could not generate a puzzle in time. Try again.";
 }
\ No newline at end of file
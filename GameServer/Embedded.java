@@ -0,0 +1,22 @@
+package GameServer;
+
+import DatabaseServer.DatabaseServer;
+
+/**
+ * Runs the game server, word database and user account microservices in a
+ * single process. The game server calls the microservices directly instead of
+ * over UDP and TCP, which suits small installations, and measures the cost of
+ * the game logic without the network in between.
+ */
+public class Embedded {
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println(Constants.EMBEDDED_USAGE);
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+
+        DatabaseServer.getWords();
+        Game.start(port, new LocalWordService(new DatabaseServer()), new LocalAccountService());
+    }
+}
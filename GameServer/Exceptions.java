@@ -1,9 +1,35 @@
 package GameServer;
 
+import java.io.IOException;
+
 class Exceptions {
     public class DuplicateLoginException extends Exception {
         public DuplicateLoginException(String message) {
             super(message);
         }
     }
-}
\ No newline at end of file
+
+    public class SessionTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SessionTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    public class GameReloadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public GameReloadException(String message) {
+            super(message);
+        }
+    }
+
+    public class RateLimitException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RateLimitException(String message) {
+            super(message);
+        }
+    }
+}
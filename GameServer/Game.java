@@ -3,18 +3,49 @@ package GameServer;
 import UserAccountServer.UserData;
 import java.io.*;
 import java.net.*;
-import java.util.ArrayList;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Game {
 
-    private static DatagramSocket wordSocket;
-    private static int wordServerPort;
+    private static WordService wordService;
+    private static AccountService accountService;
+    private static SaveQueue saveQueue;
+    private static SessionTimer sessionTimer;
+    private static CircuitBreaker wordServiceBreaker;
+    private static SessionMemory sessionMemory;
+    private static final WordCache wordCache = new WordCache(Constants.WORD_CACHE_SIZE);
+    private static final AtomicInteger activeSessions = new AtomicInteger();
+
+    // Limits on the requests each client may make of the word database
+    private static final RateLimiter mutationLimiter = new RateLimiter("mutation",
+            "word additions/removals", Constants.MUTATIONS_PER_MINUTE, Constants.GLOBAL_MUTATIONS_PER_MINUTE);
+    private static final RateLimiter queryLimiter = new RateLimiter("query", "word queries",
+            Constants.QUERIES_PER_MINUTE, Constants.GLOBAL_QUERIES_PER_MINUTE);
+    private static final RateLimiter newGameLimiter = new RateLimiter("new_game", "new games",
+            Constants.NEW_GAMES_PER_MINUTE, Constants.GLOBAL_NEW_GAMES_PER_MINUTE);
+
+    // Shared game rooms by ID, and the threads sending their updates
+    private static final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextRoomId = new AtomicInteger();
+    private static final ExecutorService roomBroadcaster = Executors.newFixedThreadPool(
+            Constants.ROOM_BROADCAST_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "room-broadcaster");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Today's puzzle, generated once and shared by every player, and its date
+    private static PuzzleTemplate dailyTemplate;
+    private static LocalDate dailyDate;
 
     /*
      * The "central" server is connected to the other components of
@@ -27,9 +58,29 @@ public class Game {
      * value of 10s.
      * 
      * If a microservice cannot be reached, the client connection
-     * is kept active, and the menu is resent.
+     * is kept active, and the menu is resent. Once the word database has
+     * failed repeatedly, its requests fail immediately until a background
+     * probe succeeds, and word queries are answered from a local cache.
+     * 
+     * A therad pool with 20 threads (by default) is used to service each
+     * incoming request. Requests are rejected with a "server busy" message
+     * when too many are queued, or when a single address opens too many.
+     * 
+     * User data is saved through a write-behind queue, which is flushed in the
+     * background, on logout, and on shutdown. If sessions retain more memory
+     * than budgeted, idle sessions' games are saved and unloaded until their
+     * next input.
      * 
-     * A therad pool with 20 threads is used to service each incoming request.
+     * Each client session expires after a period without input, or after a
+     * maximum duration, freeing its thread and login.
+     * 
+     * Word additions/removals, word queries and new games are rate limited
+     * per username and in total, so a single client flooding
+     * requests can't degrade the word database for every other player.
+     * 
+     * Players may also share a puzzle in a room, where each guess's revealed
+     * cells are pushed to the other members as it is made, or play the daily
+     * puzzle, which is generated once a day and shared by every player.
      */
     public static void main(String[] args) {
 
@@ -38,26 +89,143 @@ public class Game {
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
-        wordServerPort = Integer.parseInt(args[1]);
+        int wordServerPort = Integer.parseInt(args[1]);
+
+        try {
+            // Instances sharing a user account microservice must have distinct IDs
+            String instanceId = System.getProperty("game.instanceId");
+            if (instanceId == null) {
+                instanceId = defaultInstanceId(port);
+            }
+            start(port, new UdpWordService(Constants.WORD_HOST, wordServerPort),
+                    new TcpAccountService(Constants.UAS_HOST, Constants.UAS_PORT, instanceId));
+        } catch (SocketException e) {
+            System.out.println(Constants.SOCKET_ERROR_OPEN_WORD);
+        }
+    }
+
+    /*
+     * Identify this instance by its host name and port, which are unique among
+     * game servers sharing a user account microservice, even on different
+     * hosts. If the host name can't be determined, -Dgame.instanceId must be
+     * set to tell instances apart.
+     */
+    private static String defaultInstanceId(int port) {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + port;
+        } catch (UnknownHostException e) {
+            System.out.println(Constants.UNKNOWN_INSTANCE_HOST);
+            return "game:" + port;
+        }
+    }
+
+    /*
+     * Start the game server on the given port, using the given word database
+     * and user account microservices, whether remote (see main) or in the
+     * same process (see Embedded). Serves clients indefinitely.
+     */
+    static void start(int port, WordService words, AccountService accounts) {
+        wordService = words;
+        accountService = accounts;
 
         try {
             ServerSocket serverSocket = new ServerSocket(port);
-            wordSocket = new DatagramSocket();
-            wordSocket.setSoTimeout(Constants.UDP_TIMEOUT);
-            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(20);
+            wordServiceBreaker = new CircuitBreaker("word service",
+                    Constants.WORD_SERVICE_FAILURE_THRESHOLD, Constants.WORD_SERVICE_PROBE_INTERVAL,
+                    () -> wordService.probe());
+            saveQueue = new SaveQueue(accountService, Constants.SAVE_FLUSH_INTERVAL,
+                    Constants.SAVE_BATCH_LIMIT);
+            saveQueue.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(saveQueue::shutdown));
+            sessionTimer = new SessionTimer(Constants.SESSION_TIMER_TICK, Constants.SESSION_TIMER_BUCKETS);
+            sessionTimer.start();
+            sessionMemory = new SessionMemory(Constants.SESSION_MEMORY_BUDGET,
+                    Constants.SESSION_UNLOAD_IDLE_TIME, new SessionMemory.Store() {
+                        public void snapshot(UserData userData) {
+                            saveQueue.markDirty(userData);
+                        }
+
+                        public void flush(String username) throws IOException {
+                            saveQueue.flush(username);
+                        }
+
+                        public GameState load(String username) throws IOException {
+                            return new UserData(accountService.load(username)).getGameState();
+                        }
+                    });
+            sessionMemory.start(Constants.SESSION_MEMORY_CHECK_INTERVAL);
+            AdmissionController admissionController = new AdmissionController(
+                    Constants.THREAD_COUNT, Constants.ACCEPT_QUEUE_LIMIT,
+                    Constants.SOURCE_CONNECTION_LIMIT, Constants.BUSY_RETRY_SECONDS,
+                    newGameHandler::new);
+            registerMetrics(admissionController);
+            startLoginLease();
             System.out.println("Listening for incoming requests...");
 
             while (true) {
-                fixedThreadPool.execute(new newGameHandler(serverSocket.accept()));
+                admissionController.admit(serverSocket.accept());
             }
-        } catch (SocketException e) {
-            System.out.println(Constants.SOCKET_ERROR_OPEN_WORD);
         } catch (IOException e) {
             System.out.println(Constants.SOCKET_ERROR_OPEN_GAMESERVER);
         }
     }
 
+    /*
+     * Release any logins left over from a previous run of this instance (e.g.
+     * after a crash), then keep renewing the instance's lease on its logins in
+     * the background, so that they are released if this instance stops.
+     */
+    private static void startLoginLease() {
+        try {
+            int released = accountService.releaseLogins();
+            if (released > 0) {
+                System.out.println("Released " + released + " login(s) held by a previous run.");
+            }
+        } catch (IOException e) {
+            System.out.println(Constants.CANT_COMMUNICATE_UAS);
+        }
+
+        ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseRenewer.scheduleWithFixedDelay(() -> {
+            try {
+                accountService.renewLease();
+            } catch (IOException e) {
+                System.out.println(Constants.CANT_COMMUNICATE_UAS);
+            }
+        }, 0, Constants.LOGIN_LEASE_RENEW_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Register gauges for the game server's sessions, thread pool and save
+     * queue, and expose all metrics through JMX and the local scrape endpoint.
+     */
+    private static void registerMetrics(AdmissionController admissionController) {
+        Metrics.gauge("game_sessions_active", activeSessions::get);
+        Metrics.gauge("game_pool_threads", () -> Constants.THREAD_COUNT);
+        Metrics.gauge("game_pool_threads_active", admissionController::getActiveCount);
+        Metrics.gauge("game_pool_queue_depth", admissionController::getQueueDepth);
+        Metrics.gauge("game_connections_rejected_total{reason=\"busy\"}",
+                admissionController::getBusyRejections);
+        Metrics.gauge("game_connections_rejected_total{reason=\"source_limit\"}",
+                admissionController::getSourceLimitRejections);
+        Metrics.gauge("save_queue_pending_users", saveQueue::getPendingCount);
+        Metrics.gauge("word_service_breaker_open", () -> wordServiceBreaker.isOpen() ? 1 : 0);
+        Metrics.gauge("session_memory_bytes", sessionMemory::getRetainedBytes);
+        Metrics.gauge("session_memory_budget_bytes", sessionMemory::getBudget);
+        Metrics.gauge("sessions_unloaded", sessionMemory::getUnloadedCount);
+        Metrics.registerMBean();
+        Metrics.startScrapeEndpoint(Constants.METRICS_PORT);
+    }
+
     private static class newGameHandler implements Runnable {
+        // Commands accepted at the User Menu
+        private static final String[] USER_COMMANDS = { "Add", "Remove", "New Game", "Continue",
+                "Create Room", "Join Room", "Daily" };
+
         private Socket clientSocket;
 
         public newGameHandler(Socket socket) {
@@ -74,149 +242,181 @@ public class Game {
         }
 
         /*
-         * First the client's username is authenticated. Upon successful
-         * authentication (i.e., no communication error with the account
-         * microservice nor duplicate login), the client data is loaded. If that
-         * is also succesful, the client may proceed to the game.
+         * First the client's username is authenticated and their data is loaded
+         * in a single request to the account microservice. Upon success (i.e.,
+         * no communication error with the account microservice nor duplicate
+         * login), the client may proceed to the game.
          * 
-         * Exception Handling: connection issues between the client and game server.
-         * Will attempt to log user out, and print a corresponding error message.
+         * Exception Handling: connection issues between the client and game server,
+         * or the session timing out. Will attempt to save the user's data and log
+         * the user out, and print a corresponding error message.
          */
         private static void handleClient(Socket clientSocket) throws IOException {
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintStream out = new PrintStream(clientSocket.getOutputStream());
+            long start = System.nanoTime();
+            activeSessions.incrementAndGet();
+            try {
+                serveClient(clientSocket);
+            } finally {
+                activeSessions.decrementAndGet();
+                Metrics.histogram("game_session_duration_ms").recordSince(start);
+            }
+        }
+
+        private static void serveClient(Socket clientSocket) throws IOException {
+            Session session = new Session(clientSocket, Constants.SESSION_IDLE_TIMEOUT,
+                    Constants.SESSION_ABSOLUTE_TIMEOUT);
+            sessionTimer.schedule(session);
+
+            BufferedReader in = new Session.InputReader(
+                    new InputStreamReader(clientSocket.getInputStream()), session, sessionMemory);
+            ResponseWriter out = new ResponseWriter(clientSocket.getOutputStream());
             System.out.println("Incoming connection request detected.");
 
+            UserData userData = null;
             String username = null;
 
             try {
-                username = validateUsername(clientSocket, in, out);
-                UserData userData = validateUserData(out, username);
-
-                if (userData != null) {
-                    System.out.println("Client: '" + userData.getUsername() + "' connected.");
-                    serveUser(in, out, userData);
-                }
+                userData = validateUser(clientSocket, in, out);
+                username = userData.getUsername();
+                sessionMemory.register(session, userData, out);
+
+                System.out.println("Client: '" + username + "' connected.");
+                serveUser(in, out, userData);
+            } catch (Exceptions.SessionTimeoutException e) {
+                System.out.println("Session timed out" + (username != null ? ": '" + username + "'." : "."));
+                out.println(ResponseWriter.ERROR, "\nError: " + e.getMessage());
+            } catch (Exceptions.GameReloadException e) {
+                System.out.println("Could not reload game state: '" + username + "'.");
+                out.println(ResponseWriter.ERROR, "\nError: " + e.getMessage());
             } catch (IOException e) {
                 System.out.println(Constants.CANT_COMMUNICATE_CLIENT);
             } finally {
+                session.close();
+                sessionMemory.unregister(session);
                 if (username != null) {
+                    saveGame(userData);
+                    try {
+                        saveQueue.flush(username);
+                    } catch (IOException e) {
+                        out.println(ResponseWriter.ERROR, "Could not save user data.");
+                    }
                     logoutUser(username, out);
                 }
-                in.close();
-                out.close();
+                // Send any remaining response before the socket is closed
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    System.out.println(Constants.CANT_COMMUNICATE_CLIENT);
+                } finally {
+                    in.close();
+                }
                 System.out.println("Connection successfully closed.");
             }
         }
 
         /*
-         * Repeatedly prompt the client for their username until a valid username
-         * (i.e., for a user that isn't already online) is provided.
+         * Repeatedly prompt the client for their username until a session is
+         * opened for a valid username (i.e., for a user that isn't already online).
          * 
          * Note: if the account microservice is offline, any username supplied by
          * the client will be flagged as invalid.
          */
-        private static String validateUsername(Socket clientSocket,
-                BufferedReader in, PrintStream out) throws IOException {
+        private static UserData validateUser(Socket clientSocket,
+                BufferedReader in, ResponseWriter out) throws IOException {
 
-            String username = "";
-            boolean validUserName = false;
+            UserData userData = null;
 
-            while (!validUserName) {
-                username = promptUserName(clientSocket, in, out);
+            while (userData == null) {
+                String username = promptUserName(clientSocket, in, out);
+                long start = System.nanoTime();
+                Tracer.begin();
                 try {
-                    validUserName = checkValidUser(username, out);
+                    userData = openSession(username.trim(), out);
                 } catch (Exceptions.DuplicateLoginException e) {
+                    out.beginFrame(ResponseWriter.ERROR);
                     out.println("\nError:" + e.getMessage());
                     out.println("Try again.");
+                    out.endFrame();
+                } finally {
+                    Tracer.record("Game", "command:login", start);
+                    Tracer.end();
                 }
             }
-            return username;
+            return userData;
         }
 
         /*
          * Prompt the client for a non-empty string as their username.
+         * 
+         * Details: a client may instead reply with the key string "*Binary*" to
+         * switch the connection to the binary protocol, in which case the
+         * prompt is resent as a binary frame.
          */
         private static String promptUserName(Socket clientSocket,
-                BufferedReader in, PrintStream out) throws IOException {
-
-            out.println("\nWelcome to the crossword puzzle game. Please enter your username."
-                    + Constants.MESSAGE_END_DELIM);
-            String username = in.readLine();
+                BufferedReader in, ResponseWriter out) throws IOException {
 
-            if (username == null) {
-                throw new IOException(Constants.NO_CLIENT_INPUT);
-            }
+            String username;
+            do {
+                out.beginFrame(ResponseWriter.MENU_PROMPT);
+                out.write(ResponseWriter.WELCOME_PROMPT);
+                out.endMessage();
+                out.flush();
+                username = in.readLine();
+
+                if (username == null) {
+                    throw new IOException(Constants.NO_CLIENT_INPUT);
+                }
+                if (username.equals(Constants.BINARY_CODE)) {
+                    out.setBinary();
+                }
+            } while (username.equals(Constants.BINARY_CODE));
             return username;
         }
 
         /*
-         * Open a new TCP connection with the user account microservice to
-         * check if the client's supplied username is valid.
+         * Open a new TCP connection with the user account microservice to claim
+         * the client's login and fetch their associated data in one round trip.
+         * The first line of the reply is the login result; any remaining lines
+         * are the user data, from which a UserData object is constructed.
          * Case 0: invalid user - already logged in.
          * Case 1: existing user.
          * Case 2: new user - automatically created/registered.
+         * 
+         * Exception Handling: connection issues between the game server and
+         * the user account microservice. Will release the login if it was
+         * claimed, and return null so that the user is prompted for their
+         * username again with a corresponding error message.
          */
-        private static boolean checkValidUser(String username, PrintStream out)
+        private static UserData openSession(String username, ResponseWriter out)
                 throws Exceptions.DuplicateLoginException {
 
-            try (Socket accountSocket = new Socket("localhost", Constants.UAS_PORT)) {
-                BufferedWriter dataOut = new BufferedWriter(new OutputStreamWriter(accountSocket.getOutputStream()));
-
-                String output = "login;" + username.trim();
-                dataOut.write(output);
-                dataOut.newLine();
-                dataOut.flush();
-
-                BufferedReader in = new BufferedReader(new InputStreamReader(accountSocket.getInputStream()));
-                int loginResult = Integer.parseInt(in.readLine());
+            long start = System.nanoTime();
+            int loginResult = 0;
+            try {
+                String response = accountService.openSession(username);
+                int newline = response.indexOf('\n');
+                loginResult = Integer.parseInt(newline < 0 ? response : response.substring(0, newline));
                 if (loginResult == 0) {
                     throw new Exceptions().new DuplicateLoginException(Constants.DUPLICATE_LOGIN);
-                } else {
-                    if (loginResult == 1) {
-                        out.println("\nLogging in as: " + username);
-                    } else {
-                        out.println("\nCreating new account: " + username);
-                    }
-                    return true;
                 }
-            } catch (IOException e) {
-                out.println(Constants.CANT_COMMUNICATE_UAS);
-                return false;
-            }
-        }
 
-        /*
-         * Open a new TCP connection with the user account microservice to fetch
-         * the username's associated data as a string, and attempt to construct a
-         * UserData object from it.
-         * 
-         * Exception Handling: connection issues between the game server and
-         * the user account microservice. Will return user to menu prompting for
-         * their username with a corresponding error message.
-         */
-        private static UserData validateUserData(PrintStream out, String username) {
-            UserData userData = null;
-            try (Socket accountSocket = new Socket("localhost", Constants.UAS_PORT)) {
-                BufferedWriter dataOut = new BufferedWriter(new OutputStreamWriter(accountSocket.getOutputStream()));
-
-                String output = "load;" + username;
-                dataOut.write(output);
-                dataOut.newLine();
-                dataOut.flush();
-
-                BufferedReader in = new BufferedReader(new InputStreamReader(accountSocket.getInputStream()));
-                StringBuilder userDataBuilder = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    userDataBuilder.append(line).append("\n");
+                UserData userData = new UserData(response.substring(newline + 1));
+
+                if (loginResult == 1) {
+                    out.println("\nLogging in as: " + username);
+                } else {
+                    out.println("\nCreating new account: " + username);
                 }
-                userData = new UserData(userDataBuilder.toString());
-            } catch (IOException e) {
-                out.println(Constants.CANT_COMMUNICATE_UAS);
-                e.printStackTrace();
+                return userData;
+            } catch (IOException | RuntimeException e) {
+                out.println(ResponseWriter.ERROR, Constants.CANT_COMMUNICATE_UAS);
+                if (loginResult != 0) {
+                    logoutUser(username, out);
+                }
+                return null;
+            } finally {
+                Metrics.histogram("account_open_ms").recordSince(start);
             }
-            return userData;
         }
 
         /*
@@ -236,16 +436,22 @@ public class Game {
          * word database microservice, or invalid user input. In either case, will
          * return user to User Menu with a corresponding error message.
          */
-        private static void serveUser(BufferedReader in, PrintStream out, UserData userData)
-                throws IOException {
+        private static void serveUser(BufferedReader in, ResponseWriter out,
+                UserData userData) throws IOException {
             String input;
 
             try {
                 // Sentinel loop for the user menu
                 do {
-                    out.println("\nUser: " + userData.getUsername());
-                    out.println("Score: " + userData.getScore());
-                    out.println(Constants.USER_MENU + Constants.MESSAGE_END_DELIM);
+                    out.beginFrame(ResponseWriter.MENU_PROMPT);
+                    out.print("\nUser: ");
+                    out.println(userData.getUsername());
+                    out.print("Score: ");
+                    out.print(userData.getScore());
+                    out.println();
+                    out.write(ResponseWriter.USER_MENU);
+                    out.endMessage();
+                    out.flush();
                     input = in.readLine().trim();
                     try {
                         if (input.equals(Constants.EXIT_CODE)) {
@@ -256,6 +462,8 @@ public class Game {
                                 .equals(Constants.PLAY_STATE);
 
                         processUserInput(in, out, userData, input, existingGame);
+                    } catch (Exceptions.SessionTimeoutException | Exceptions.GameReloadException e) {
+                        throw e;
                     } catch (SocketTimeoutException e) {
                         // Handle IO exception if user input invalid/can't contact
                         // word database microservice
@@ -266,6 +474,8 @@ public class Game {
                         handleError(out, userData, e);
                     }
                 } while (true);
+            } catch (Exceptions.SessionTimeoutException | Exceptions.GameReloadException e) {
+                throw e;
             } catch (IOException e) {
                 System.out.println("Error: could not communicate with client.");
             }
@@ -276,56 +486,114 @@ public class Game {
          * 
          * Details: user input is tokenized in the following format: command;argument.
          */
-        private static void processUserInput(BufferedReader in, PrintStream out,
+        private static void processUserInput(BufferedReader in, ResponseWriter out,
                 UserData userData, String input, boolean existingGame) throws IOException {
 
-            // Tokenize user input
-            String[] tokenizedInput = input.split(";");
-            if (tokenizedInput.length <= 1)
+            // Tokenize user input in place
+            int separator = CommandParser.fieldEnd(input, 0);
+            String command = CommandParser.lookup(input, 0, separator, USER_COMMANDS);
+            if (command == null || separator + 1 >= input.length())
                 throw new IOException(Constants.INVALID_COMMAND_SYNTAX);
 
-            String command = tokenizedInput[0];
-            String argument = tokenizedInput[1];
+            String argument = input.substring(separator + 1,
+                    CommandParser.fieldEnd(input, separator + 1));
+            boolean startGame = false;
+            Room room = null;
 
-            // Handle various commands
-            switch (command) {
-                // Add word to database
-                case "Add": {
-                    out.println("\n" + contactDatabase('A', argument));
-                    break;
-                }
-                // Remove word from database
-                case "Remove": {
-                    out.println("\n" + contactDatabase('B', argument));
-                    break;
-                }
-                // Start new game with specified word count
-                // Argument must be an integer from 2-15, inclusive
-                case "New Game": {
-                    try {
-                        int wordCount = Integer.parseInt(argument);
-                        if (wordCount < 2 || wordCount > Constants.MAX_WORD_COUNT) {
-                            throw new IOException(Constants.WORD_COUNT_NOT_IN_RANGE);
+            long start = System.nanoTime();
+            Tracer.begin();
+            try {
+                // Handle various commands
+                switch (command) {
+                    // Add word to database
+                    case "Add": {
+                        mutationLimiter.acquire(userData.getUsername());
+                        out.println("\n" + contactDatabase('A', argument));
+                        break;
+                    }
+                    // Remove word from database
+                    case "Remove": {
+                        mutationLimiter.acquire(userData.getUsername());
+                        out.println("\n" + contactDatabase('B', argument));
+                        break;
+                    }
+                    // Start new game with specified word count
+                    // Argument must be an integer from 2-15, inclusive
+                    case "New Game": {
+                        try {
+                            int wordCount = Integer.parseInt(argument);
+                            if (wordCount < 2 || wordCount > Constants.MAX_WORD_COUNT) {
+                                throw new IOException(Constants.WORD_COUNT_NOT_IN_RANGE);
+                            }
+
+                            newGameLimiter.acquire(userData.getUsername());
+                            createNewGame(userData, wordCount);
+                            startGame = true;
+                        } catch (NumberFormatException e) {
+                            throw new IOException(Constants.INVALID_WORD_COUNT);
                         }
-
-                        createNewGame(userData, wordCount);
-                        playGame(in, out, userData);
-                    } catch (NumberFormatException e) {
-                        throw new IOException(Constants.INVALID_WORD_COUNT);
+                        break;
                     }
-                    break;
-                }
-                // Continue existing game; argument may be any non-empty string
-                case "Continue": {
-                    if (existingGame) {
-                        playGame(in, out, userData);
-                    } else {
-                        throw new IOException(Constants.NO_EXISTING_GAME);
+                    // Continue existing game; argument may be any non-empty string
+                    case "Continue": {
+                        if (existingGame) {
+                            startGame = true;
+                        } else {
+                            throw new IOException(Constants.NO_EXISTING_GAME);
+                        }
+                        break;
                     }
-                    break;
+                    // Start a shared game with specified word count, in the same
+                    // range as a new game
+                    case "Create Room": {
+                        try {
+                            int wordCount = Integer.parseInt(argument);
+                            if (wordCount < 2 || wordCount > Constants.MAX_WORD_COUNT) {
+                                throw new IOException(Constants.WORD_COUNT_NOT_IN_RANGE);
+                            }
+
+                            newGameLimiter.acquire(userData.getUsername());
+                            room = createRoom(wordCount);
+                        } catch (NumberFormatException e) {
+                            throw new IOException(Constants.INVALID_WORD_COUNT);
+                        }
+                        break;
+                    }
+                    // Join a shared game by its room ID
+                    case "Join Room": {
+                        room = rooms.get(argument.trim());
+                        if (room == null || room.isOver()) {
+                            throw new IOException(Constants.NO_SUCH_ROOM);
+                        }
+                        break;
+                    }
+                    // Play today's puzzle; argument may be any non-empty string.
+                    // A daily game saved today is continued, even if it was
+                    // started before the server restarted
+                    case "Daily": {
+                        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                        if (!existingGame || !today.equals(userData.getGameState().getDailyDate())) {
+                            newGameLimiter.acquire(userData.getUsername());
+                            createDailyGame(userData, getDailyTemplate(today), today);
+                        }
+                        startGame = true;
+                        break;
+                    }
+                    default:
+                        throw new IOException(Constants.INVALID_COMMAND_SYNTAX);
+                }
+            } finally {
+                if (Tracer.current() != null) {
+                    Tracer.record("Game", "command:" + command.replace(' ', '_'), start);
                 }
-                default:
-                    throw new IOException(Constants.INVALID_COMMAND_SYNTAX);
+                Tracer.end();
+            }
+
+            // The game's own commands are traced separately
+            if (startGame) {
+                playGame(in, out, userData);
+            } else if (room != null) {
+                playRoom(in, out, userData, room);
             }
         }
 
@@ -333,138 +601,240 @@ public class Game {
          * Send a request to the word database microservice in the command;argument
          * format.
          * 
-         * Exception Handling: unknown host IP address. Will throw an IOException
+         * Exception Handling: unknown host IP address, or the word database
+         * microservice's circuit breaker being open. Will throw an IOException
          * that is propagated up to and caught in handleClient.
          */
         private static String contactDatabase(char command, String payload) throws IOException {
+            checkWordService();
+            long start = System.nanoTime();
             try {
-                String request = String.valueOf(command) + ";" + payload;
-                byte[] requestBuf = new byte[Constants.BUFFER_LIMIT];
-                requestBuf = request.getBytes();
-
-                InetAddress address = InetAddress.getByName("localhost");
-                DatagramPacket packet = new DatagramPacket(requestBuf, requestBuf.length,
-                        address, wordServerPort);
-                wordSocket.send(packet);
+                String response = wordService.request(command, payload);
+                wordServiceBreaker.recordSuccess();
+                cacheDatabaseResponse(command, payload, response);
+                return response;
+            } catch (IOException e) {
+                wordServiceBreaker.recordFailure();
+                throw e;
+            } finally {
+                recordDatabaseLatency(command, start);
+            }
+        }
 
-                byte[] responseBuf = new byte[Constants.BUFFER_LIMIT];
-                packet = new DatagramPacket(responseBuf, responseBuf.length);
-                wordSocket.receive(packet);
+        /*
+         * Fail fast while the word database microservice's circuit breaker is
+         * open.
+         */
+        private static void checkWordService() throws IOException {
+            if (wordServiceBreaker.isOpen()) {
+                Metrics.counter("word_service_rejections_total").increment();
+                throw new IOException(Constants.WORD_SERVICE_UNAVAILABLE);
+            }
+        }
 
-                String word = new String(packet.getData(), 0, packet.getLength());
-                return word;
-            } catch (UnknownHostException e) {
-                throw new IOException("Could not determine IP address of host.");
+        /*
+         * Remember what a response revealed about the database, so that word
+         * queries can still be answered while the microservice is unavailable.
+         */
+        private static void cacheDatabaseResponse(char command, String payload, String response) {
+            switch (command) {
+                case 'A' -> wordCache.put(payload, true);
+                case 'B' -> {
+                    if (response.startsWith("Successfully")) {
+                        wordCache.put(payload, false);
+                    }
+                }
+                case 'C' -> wordCache.put(payload, response.equals("1"));
+                default -> wordCache.put(response, true);
             }
         }
 
+        private static void recordDatabaseLatency(char command, long start) {
+            Metrics.histogram(Metrics.withLabel("word_service_latency_ms", "opcode",
+                    String.valueOf(command))).recordSince(start);
+            Tracer.record("Game", "word_service:" + command, start);
+        }
+
         /*
          * Create a new game, then save/update the user data.
          */
         private static void createNewGame(UserData userData, int wordCount) throws IOException {
-            String words[] = generateWordList(wordCount);
+            PuzzleGenerator.Layout layout = generatePuzzle(wordCount);
+            String words[] = layout.words;
 
             // Number of attempts is either twice the word count, or the maximum
             // word count allowed, whichever is less
             int attempts = Math.min(words.length * 2, Constants.MAX_WORD_COUNT);
 
-            userData.setGameState(new GameState(attempts, words));
+            long start = System.nanoTime();
+            Puzzle puzzle = layout.createPuzzle();
+            Metrics.histogram("puzzle_construction_ms").recordSince(start);
+            Tracer.record("Game", "puzzle_layout", start);
+
+            userData.setGameState(new GameState(attempts, words, puzzle));
             saveGame(userData);
         }
 
         /*
-         * Generate a new game by requesting a stem word and a list of (valid)
-         * leaf words from the word database microservice.
+         * Start a game of today's puzzle. Only the player's mask of revealed
+         * cells is created; the template is shared with every other player.
+         */
+        private static void createDailyGame(UserData userData, PuzzleTemplate template, LocalDate date)
+                throws IOException {
+            String[] words = template.getWords();
+            int attempts = Math.min(words.length * 2, Constants.MAX_WORD_COUNT);
+            GameState gameState = new GameState(attempts, words, new Puzzle(template));
+            gameState.setDailyDate(date);
+            userData.setGameState(gameState);
+            saveGame(userData);
+        }
+
+        /*
+         * Get today's (UTC) puzzle, generating it on the first request of the
+         * day from a seed derived from the date. Players requesting it while it
+         * is generated wait for it, so it is only generated once. Yesterday's
+         * template stops being shared, but players still playing it keep it.
+         *
+         * The template is only kept in memory, so it is generated again if the
+         * server restarts. As the stem and leaves requested from the word
+         * database are seeded from the date too, every game server generates
+         * the same puzzle for the day, unless words were added or removed in
+         * the meantime; daily games already saved keep their own layout.
+         */
+        private static synchronized PuzzleTemplate getDailyTemplate(LocalDate today) throws IOException {
+            if (!today.equals(dailyDate)) {
+                PuzzleTemplate template = generatePuzzle(Constants.DAILY_WORD_COUNT,
+                        today.toEpochDay()).createTemplate();
+                if (dailyTemplate != null) {
+                    dailyTemplate.unshare();
+                }
+                dailyTemplate = template.share();
+                dailyDate = today;
+            }
+            return dailyTemplate;
+        }
+
+        /*
+         * Create a shared game room, with the same number of attempts as a new
+         * game. The room is not saved; it lasts until its game is over or its
+         * last member leaves.
+         */
+        private static Room createRoom(int wordCount) throws IOException {
+            PuzzleGenerator.Layout layout = generatePuzzle(wordCount);
+            int attempts = Math.min(layout.words.length * 2, Constants.MAX_WORD_COUNT);
+
+            String id = String.valueOf(nextRoomId.incrementAndGet());
+            Room room = new Room(id, layout.words, layout.createPuzzle(), attempts, roomBroadcaster);
+            rooms.put(id, room);
+            return room;
+        }
+
+        /*
+         * Generate a new game by requesting a stem word and a pool of candidate
+         * leaf words from the word database microservice, then laying them out.
          * 
-         * Details: leaves are generated as follows:
+         * Details: puzzles are generated as follows:
          * 
-         * 1. A set of random, unique indices in the stem are selected
-         * to determine where to connect the leaves from
-         * 2. Leaves are fetched - choose a word that has at least 1 character
-         * matching the stem's character at the specified index
-         * 3. Each leaf is inserted at a random connecting index, starting
-         * with the leaf that has the least matches possible
-         * 4. Each leaf's matches is updated and sorted by count
-         * 5. Repeat step 3-4 until all leaves are inserted
+         * 1. A stem is fetched
+         * 2. Candidate leaves are fetched concurrently, a fixed number for each
+         * distinct character of the stem
+         * 3. The generator assigns candidates to distinct rows of the stem by
+         * backtracking, filling the row with the fewest usable candidates first
+         * 4. Each leaf connects to the stem through a random occurrence of its
+         * row's character
          * 
          * E.g.
          * -The stem is cat
          * -The word count is 3 --> 2 leaves needed
-         * -Connecting leaf indices (randomly) chosen are: 0, 2 --> 'c', 't'
-         * -Leaves generated are: cute, soccer
-         * -Soccer may only be inserted at index 0, cute may be inserted at 0 or 2
-         * -Soccer is inserted first, which 'c' in soccer to connect to stem with
-         * is randomly chosen
-         * -Soccer is inserted at index 0, cute may now only be inserted at 2
+         * -Candidates fetched are: soccer, cute (for 'c'), apple (for 'a'), tea
+         * (for 't')
+         * -Row 't' is most constrained (cute, tea), and is filled with tea
+         * -Row 'c' (soccer, cute) is filled with soccer
          * 
-         * If it is somehow impossible to generate a valid crossword puzzle
-         * from the chosen stem due to insufficient matching leaves, a new stem
-         * will be selected.
+         * If the candidates can't fill enough rows, a new stem is fetched, until
+         * the generation deadline is reached.
+         * 
+         * All random choices are made from a seed, which is logged along with the
+         * words, so that the layout can be reproduced. The word database's
+         * choices of stem and leaves are seeded from it too, so the same seed
+         * generates the same puzzle while the database's words are unchanged
+         * (and generation doesn't time out).
          */
-        private static String[] generateWordList(int wordCount) throws IOException {
-            while (true) {
-                ArrayList<String> wordsList = new ArrayList<>();
-                String stem = fetchStem(wordCount - 1);
-                wordsList.add(stem);
+        private static PuzzleGenerator.Layout generatePuzzle(int wordCount) throws IOException {
+            return generatePuzzle(wordCount, Constants.PUZZLE_SEED != null ? Constants.PUZZLE_SEED
+                    : ThreadLocalRandom.current().nextLong());
+        }
 
-                ArrayList<Integer> leafIndicesList = generateLeafIndices(wordCount, stem);
-                if (populateLeaves(leafIndicesList, stem, wordsList)) {
-                    return wordsList.toArray(new String[0]);
+        private static PuzzleGenerator.Layout generatePuzzle(int wordCount, long seed) throws IOException {
+            long start = System.nanoTime();
+            long deadline = System.currentTimeMillis() + Constants.PUZZLE_GENERATION_DEADLINE;
+            PuzzleGenerator generator = new PuzzleGenerator(seed, Constants.MAX_PUZZLE_WIDTH);
+            GameEvents.PuzzleGeneration event = new GameEvents.PuzzleGeneration();
+            event.begin();
+            event.wordCount = wordCount;
+            event.seed = seed;
+            try {
+                while (System.currentTimeMillis() < deadline) {
+                    String stem = fetchStem(wordCount - 1, generator.nextWordSeed());
+                    Metrics.counter("puzzle_stems_tried_total").increment();
+                    event.stemsTried++;
+
+                    String[] candidates = fetchLeaves(generator.getCandidateLetters(stem,
+                            Constants.LEAF_CANDIDATES_PER_LETTER), generator, deadline);
+                    event.leavesFetched += candidates.length;
+                    PuzzleGenerator.Layout layout = generator.layout(stem, candidates,
+                            wordCount - 1, deadline);
+                    if (layout != null) {
+                        System.out.println("Generated puzzle (seed " + generator.getSeed() + "): "
+                                + String.join(",", layout.words));
+                        event.succeeded = true;
+                        return layout;
+                    }
                 }
+                Metrics.counter("puzzle_generation_timeouts_total").increment();
+                throw new IOException(Constants.PUZZLE_GENERATION_TIMEOUT);
+            } finally {
+                event.commit();
+                Metrics.histogram("puzzle_generation_ms").recordSince(start);
+                Tracer.record("Game", "generate_puzzle", start);
             }
         }
 
-        private static String fetchStem(int a) throws IOException {
-            return contactDatabase('E', String.valueOf(a));
-        }
-
-        private static ArrayList<Integer> generateLeafIndices(int wordCount, String stem) {
-            Set<Integer> leafIndices = new HashSet<>();
-            while (leafIndices.size() < wordCount - 1) {
-                leafIndices.add(new Random().nextInt(stem.length()));
-            }
-            return new ArrayList<>(leafIndices);
+        private static String fetchStem(int a, long seed) throws IOException {
+            return contactDatabase('E', a + ";" + seed);
         }
 
         /*
-         * Insert leaves of a crossword puzzle.
+         * Fetch a leaf for each matching character concurrently. Each request
+         * carries its own seed from the generator, so the leaves don't depend on
+         * the order in which the requests are served.
          * 
-         * Details: insufficient matching leaves is determined when either of the
-         * following scenarios occur:
-         * 
-         * 1. Leaf fetched is empty - no matching leaf possible.
-         * 2. The word database microservice returns 5 consecutive leaves - matching
-         * leaves exist but are insufficient.
+         * Exception Handling: the word database microservice not responding in
+         * time, or the puzzle generation deadline passing. Will throw an
+         * IOException that is propagated up to and caught in serveUser.
          */
-        private static boolean populateLeaves(ArrayList<Integer> leafIndicesList, String stem,
-                ArrayList<String> wordsList) throws IOException {
-
-            String leaf = "";
-            int consecutiveDuplicateLeaf = 0;
-
-            for (int i = 0; i < leafIndicesList.size(); i++) {
-                int index = leafIndicesList.get(i).intValue();
-                char connectingCharacter = stem.toCharArray()[index];
-
-                do {
-                    leaf = fetchLeaf(connectingCharacter);
-                    consecutiveDuplicateLeaf++;
-
-                    // Can't create crossword puzzle, exit and return 'unsuccesful' flag
-                    if (consecutiveDuplicateLeaf > 5 || leaf.equals("")) {
-                        return false;
-                    }
-                } while (wordsList.contains(leaf));
-
-                wordsList.add(leaf);
-                consecutiveDuplicateLeaf = 0;
+        private static String[] fetchLeaves(char[] matchingCharacters, PuzzleGenerator generator,
+                long deadline) throws IOException {
+            checkWordService();
+            String[] payloads = new String[matchingCharacters.length];
+            for (int i = 0; i < matchingCharacters.length; i++) {
+                payloads[i] = matchingCharacters[i] + ";" + generator.nextWordSeed();
             }
-            return true;
-        }
 
-        private static String fetchLeaf(char matchingCharacter) throws IOException {
-            String charToString = String.valueOf(matchingCharacter);
-            return contactDatabase('D', charToString);
+            long start = System.nanoTime();
+            String[] leaves;
+            try {
+                leaves = wordService.requestAll('D', payloads, deadline,
+                        () -> recordDatabaseLatency('D', start));
+            } catch (IOException e) {
+                wordServiceBreaker.recordFailure();
+                throw e;
+            }
+            wordServiceBreaker.recordSuccess();
+            for (String leaf : leaves) {
+                wordCache.put(leaf, true);
+            }
+            return leaves;
         }
 
         /*
@@ -478,8 +848,8 @@ public class Game {
          * word database microservice, or invalid user input. In either case, will
          * return user to Game Menu with a corresponding error message.
          */
-        private static void playGame(BufferedReader in, PrintStream out, UserData userData)
-                throws IOException {
+        private static void playGame(BufferedReader in, ResponseWriter out,
+                UserData userData) throws IOException {
             GameState gameState = userData.getGameState();
             gameState.setState(Constants.PLAY_STATE);
 
@@ -489,9 +859,14 @@ public class Game {
             // Sentinel loop for the game menu
             while (gameOver == 0) {
                 try {
-                    out.print("\n" + gameState.getPuzzle().getPuzzleString());
+                    out.beginFrame(ResponseWriter.PUZZLE_STATE);
+                    out.println();
+                    gameState.getPuzzle().writePuzzle(out);
+                    out.endFrame();
                     input = getValidInput(in, out, gameState);
-                    gameOver = processGameInput(in, out, gameState, input);
+                    gameOver = processGameInput(in, out, userData, input);
+                } catch (Exceptions.SessionTimeoutException | Exceptions.GameReloadException e) {
+                    throw e;
                 } catch (SocketTimeoutException e) {
                     handleError(out, userData, new IOException(Constants.CANT_COMMUNICATE_WDBS));
                 } catch (IOException e) {
@@ -506,88 +881,215 @@ public class Game {
             saveGame(userData);
         }
 
+        /*
+         * Process user input for interacting with the Room Menu.
+         * 
+         * Details: guesses are applied to the room's shared puzzle, and the
+         * cells they reveal are sent to the other members. Other members'
+         * updates are written to the connection as they arrive, between this
+         * member's own responses. The member whose guess solves the puzzle
+         * scores a point.
+         * 
+         * Exception Handling: same as playGame. The member leaves the room when
+         * they enter the key string "*Save*", or once its game is over.
+         */
+        private static void playRoom(BufferedReader in, ResponseWriter out,
+                UserData userData, Room room) throws IOException {
+            Room.Member member = room.join(userData.getUsername(), out);
+            out.println("\nJoined room " + room.getId() + " (" + room.getMemberCount()
+                    + " player(s)).");
+
+            try {
+                // Sentinel loop for the room menu
+                while (!room.isOver()) {
+                    try {
+                        out.beginFrame(ResponseWriter.PUZZLE_STATE);
+                        out.println();
+                        room.writePuzzle(out);
+                        out.endFrame();
+                        out.beginFrame(ResponseWriter.MENU_PROMPT);
+                        out.write(ResponseWriter.ROOM_MENU);
+                        out.print("Room: ");
+                        out.println(room.getId());
+                        out.print("Attempts remaining: ");
+                        out.print(room.getAttempts());
+                        out.endMessage();
+                        out.flush();
+
+                        String input = in.readLine().trim();
+                        if (CommandParser.hasReservedChar(input)) {
+                            throw new IOException("\nInvalid guess: " + input + ". Try again.");
+                        }
+                        if (input.equals(Constants.SAVE_CODE)) {
+                            break;
+                        }
+                        processRoomInput(in, out, userData, room, member, input);
+                    } catch (Exceptions.SessionTimeoutException | Exceptions.GameReloadException e) {
+                        throw e;
+                    } catch (SocketTimeoutException e) {
+                        out.println(ResponseWriter.ERROR, "\nError: " + Constants.CANT_COMMUNICATE_WDBS);
+                    } catch (IOException e) {
+                        out.println(ResponseWriter.ERROR, "\nError: " + e.getMessage());
+                    }
+                }
+            } finally {
+                room.leave(member);
+                if (room.isOver() || room.getMemberCount() == 0) {
+                    rooms.remove(room.getId(), room);
+                }
+            }
+        }
+
+        private static void processRoomInput(BufferedReader in, ResponseWriter out,
+                UserData userData, Room room, Room.Member member, String input) throws IOException {
+            long start = System.nanoTime();
+            Tracer.begin();
+            try {
+                // Query case
+                if (input.startsWith("?")) {
+                    queryLimiter.acquire(userData.getUsername());
+                    if (processWordQuery(in, out, room.getWords(), input.substring(1))) {
+                        out.println("\nThe word: " + input + " is in the database.");
+                    } else {
+                        out.println("\nThe word: " + input + " is not in the database.");
+                    }
+                    return;
+                }
+
+                if (room.guess(member, input)) {
+                    out.println("\n*Successful guess: '" + input + "'. Puzzle updated.");
+                } else {
+                    out.println("\n*Unsuccessful guess: '" + input + "'.");
+                }
+                if (room.isOver()) {
+                    out.println();
+                    room.writePuzzle(out);
+                    if (userData.getUsername().equals(room.getSolvedBy())) {
+                        out.println("You win!");
+                        userData.incrementScore();
+                        saveGame(userData);
+                    } else if (room.getSolvedBy() != null) {
+                        out.println(room.getSolvedBy() + " solved the puzzle!");
+                    } else {
+                        out.println("You lose!");
+                    }
+                }
+            } finally {
+                Tracer.record("Game", "command:room_" + (input.startsWith("?") ? "query" : "guess"),
+                        start);
+                Tracer.end();
+            }
+        }
+
         /*
          * Repeatedly Validate and process user game input until the user enters
          * the key string "*Save*"".
          */
-        private static String getValidInput(BufferedReader in, PrintStream out, GameState gameState)
+        private static String getValidInput(BufferedReader in, ResponseWriter out, GameState gameState)
                 throws IOException {
             String input = "";
 
             do {
-                out.println(Constants.GAME_MENU);
-                out.println("Attempts remaining: " + gameState.getAttempts()
-                        + Constants.MESSAGE_END_DELIM);
+                out.beginFrame(ResponseWriter.MENU_PROMPT);
+                out.write(ResponseWriter.GAME_MENU);
+                out.print("Attempts remaining: ");
+                out.print(gameState.getAttempts());
+                out.endMessage();
+                out.flush();
 
                 input = in.readLine().trim();
                 // Prevent user from entering certain special characters required to
                 // represent puzzle
-                if (input.matches(Constants.NO_SPECIAL_CHAR_REGEX)) {
+                if (CommandParser.hasReservedChar(input)) {
                     throw new IOException("\nInvalid guess: " + input + ". Try again.");
                 } else
                     return input;
             } while (true);
         }
 
-        private static int processGameInput(BufferedReader in, PrintStream out,
-                GameState gameState, String input) throws IOException {
-            // Save command
-            if (input.equals(Constants.SAVE_CODE)) {
-                return 1;
-            }
+        private static int processGameInput(BufferedReader in, ResponseWriter out,
+                UserData userData, String input) throws IOException {
+            GameState gameState = userData.getGameState();
+            String spanName = input.equals(Constants.SAVE_CODE) ? "save"
+                    : input.startsWith("?") ? "query" : "guess";
 
-            // Query case
-            else if (input.toCharArray()[0] == '?') {
-                if (processWordQuery(in, out, gameState, input.substring(1))) {
-                    out.println("\nThe word: " + input + " is in the database.");
-                } else {
-                    out.println("\nThe word: " + input + " is not in the database.");
+            long start = System.nanoTime();
+            Tracer.begin();
+            try {
+                // Save command
+                if (input.equals(Constants.SAVE_CODE)) {
+                    return 1;
                 }
-                return 0;
-            }
 
-            else {
-                return processPuzzleGuess(in, out, gameState, input);
+                // Query case
+                else if (input.startsWith("?")) {
+                    queryLimiter.acquire(userData.getUsername());
+                    if (processWordQuery(in, out, gameState.getWords(), input.substring(1))) {
+                        out.println("\nThe word: " + input + " is in the database.");
+                    } else {
+                        out.println("\nThe word: " + input + " is not in the database.");
+                    }
+                    return 0;
+                }
+
+                else {
+                    return processPuzzleGuess(in, out, userData, input);
+                }
+            } finally {
+                Tracer.record("Game", "command:" + spanName, start);
+                Tracer.end();
             }
         }
 
         /*
          * Check if a word exists within the database.
+         * 
+         * Details: if the word database microservice is unavailable, the query is
+         * answered from the cache of recently seen words and the current game's
+         * words instead.
          */
-        private static Boolean processWordQuery(BufferedReader in, PrintStream out,
-                GameState gameState, String input) throws IOException {
+        private static Boolean processWordQuery(BufferedReader in, ResponseWriter out,
+                String[] words, String input) throws IOException {
 
-            boolean found = false;
+            String word = CommandParser.remove(input, '?');
+            Boolean found;
 
             // Check if input in database first
-            found = contactDatabase('C', input
-                    .replaceAll("\\?", "")).equals("1");
+            try {
+                found = contactDatabase('C', word).equals("1");
+            } catch (IOException e) {
+                found = wordCache.get(word);
+            }
 
             // Check if input in word list used to construct puzzle, in case of
             // of unfortunate delete timing (i.e., user created a game with a specific
             // word, but then another user deleted said word after)
-            if (!found) {
-                String[] words = gameState.getWords();
+            if (found == null || !found) {
                 for (int i = 0; i < words.length; i++) {
-                    if (words[i].equals(input)) {
+                    if (words[i].equals(word)) {
                         return true;
                     }
                 }
             }
+            if (found == null) {
+                throw new IOException(Constants.WORD_SERVICE_UNAVAILABLE);
+            }
             return found;
         }
 
         /*
          * Process user's puzzle guess, updating attempts and checking
-         * for conditions of victory/defeat.
+         * for conditions of victory/defeat. The guess is saved as an event.
          * 
          * Return value is 0, 1, or 2, indicating to continue game, a loss,
          * or a win, respectively.
          */
-        private static int processPuzzleGuess(BufferedReader in, PrintStream out,
-                GameState gameState, String input) {
+        private static int processPuzzleGuess(BufferedReader in, ResponseWriter out,
+                UserData userData, String input) {
+            GameState gameState = userData.getGameState();
             boolean successfulGuess = gameState.getPuzzle().updatePuzzleGrid(input);
             gameState.decrementAttempts();
+            saveGuess(userData, input);
 
             if (successfulGuess) {
                 out.println("\n*Successful guess: '" + input + "'. Puzzle updated.");
@@ -627,30 +1129,33 @@ public class Game {
         }
 
         /*
-         * Open a new TCP connection with the user account microservice to save the
-         * username's associated data as a string.
-         * 
-         * Exception Handling: connection issues between the game server and
-         * the user account microservice. Will return user to menu prompting for
-         * their username with a corresponding error message.
+         * Queue the username's associated data to be saved by the user account
+         * microservice. Repeated saves are merged and sent in the background, so
+         * the user never waits on the microservice.
          */
-        private static void saveGame(UserData userData) throws IOException {
-
-            try (Socket accountSocket = new Socket("localhost", Constants.UAS_PORT)) {
-                BufferedWriter dataOut = new BufferedWriter(new OutputStreamWriter(accountSocket.getOutputStream()));
-
-                String output = "save;" + userData.getUsername();
-                dataOut.write(output + "\n" + userData.getUserDataString());
-                dataOut.newLine();
-                dataOut.flush();
+        private static void saveGame(UserData userData) {
+            // An unloaded game was already saved when it was unloaded
+            if (userData.getGameState().isUnloaded()) {
+                return;
+            }
+            long start = System.nanoTime();
+            userData.getGameState().clearLoggedGuesses();
+            saveQueue.markDirty(userData);
+            Metrics.histogram("save_enqueue_ms").recordSince(start);
+        }
 
-                BufferedReader in = new BufferedReader(new InputStreamReader(accountSocket.getInputStream()));
-                int saveResult = Integer.parseInt(in.readLine());
-                if (saveResult == 0) {
-                    throw new IOException("Couldn't save game.");
-                }
-            } catch (IOException e) {
-                throw new IOException("Couldn't save game.");
+        /*
+         * Queue a guess to be appended to the username's event log, instead of
+         * saving the full game state. A full snapshot is saved instead once
+         * enough guesses have been logged since the last one, to bound the
+         * number of events replayed when the user data is loaded.
+         */
+        private static void saveGuess(UserData userData, String guess) {
+            GameState gameState = userData.getGameState();
+            if (gameState.getLoggedGuesses() >= Constants.SNAPSHOT_INTERVAL) {
+                saveGame(userData);
+            } else {
+                saveQueue.appendEvent(userData.getUsername(), gameState.logGuess(guess));
             }
         }
 
@@ -662,24 +1167,16 @@ public class Game {
          * the user account microservice. Will return user to menu prompting for
          * their username with a corresponding error message.
          */
-        private static void logoutUser(String username, PrintStream out) {
-            try (Socket accountSocket = new Socket("localhost", Constants.UAS_PORT)) {
-                BufferedWriter dataOut = new BufferedWriter(new OutputStreamWriter(accountSocket.getOutputStream()));
-
-                String output = "logout;" + username.trim();
-                dataOut.write(output);
-                dataOut.newLine();
-                dataOut.flush();
-
-                BufferedReader inLogout = new BufferedReader(new InputStreamReader(accountSocket.getInputStream()));
-                int logoutResult = Integer.parseInt(inLogout.readLine());
+        private static void logoutUser(String username, ResponseWriter out) {
+            try {
+                int logoutResult = accountService.logout(username.trim());
                 if (logoutResult == 0) {
-                    out.println("Failed to log out user: " + username);
+                    out.println(ResponseWriter.ERROR, "Failed to log out user: " + username);
                 } else {
                     out.println("Logging out: " + username);
                 }
             } catch (IOException e) {
-                out.println("Error: Could not communicate with user account server.");
+                out.println(ResponseWriter.ERROR, "Error: Could not communicate with user account server.");
                 e.printStackTrace();
             }
         }
@@ -688,13 +1185,9 @@ public class Game {
          * In the event of an error, attempt to save the user's data before
          * returning them to their previous menu with a corresponding error message.
          */
-        private static void handleError(PrintStream out, UserData userData, Exception e) {
-            out.println("\nError: " + (e.getMessage()));
-            try {
-                saveGame(userData);
-            } catch (IOException saveError) {
-                out.println("Could not save user data.");
-            }
+        private static void handleError(ResponseWriter out, UserData userData, Exception e) {
+            out.println(ResponseWriter.ERROR, "\nError: " + (e.getMessage()));
+            saveGame(userData);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package GameServer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the game server's hot paths, so they can be
+ * correlated with GC, lock and I/O events in the same recording.
+ *
+ * Each event's duration is the time between begin and commit. Events are
+ * only committed while a recording enables them (see game.jfc), and above
+ * the recording's threshold for the event, so they cost almost nothing
+ * otherwise. Stack traces are disabled, as the events are recorded from known
+ * call sites.
+ */
+class GameEvents {
+    private static final String CATEGORY = "Word Game";
+
+    // Guesses are the hottest path, so no event is created unless enabled
+    private static final EventType GUESS_TYPE = EventType.getEventType(Guess.class);
+
+    @Name("GameServer.WordServiceRequest")
+    @Label("Word Service Request")
+    @Description("A round trip to the word database microservice")
+    @Category({ CATEGORY, "Word Service" })
+    @StackTrace(false)
+    static class WordServiceRequest extends Event {
+        @Label("Opcode")
+        char opcode;
+
+        @Label("Request Size")
+        @DataAmount
+        int requestBytes;
+
+        @Label("Response Size")
+        @DataAmount
+        int responseBytes;
+
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    @Name("GameServer.AccountOperation")
+    @Label("Account Operation")
+    @Description("A request to the user account microservice")
+    @Category({ CATEGORY, "User Account Service" })
+    @StackTrace(false)
+    static class AccountOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Username")
+        String username;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("GameServer.PuzzleGeneration")
+    @Label("Puzzle Generation")
+    @Description("Generation of a new puzzle, from fetching its stem to laying it out")
+    @Category({ CATEGORY, "Puzzle" })
+    @StackTrace(false)
+    static class PuzzleGeneration extends Event {
+        @Label("Word Count")
+        int wordCount;
+
+        @Label("Seed")
+        long seed;
+
+        @Label("Stems Tried")
+        int stemsTried;
+
+        @Label("Leaves Fetched")
+        int leavesFetched;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("GameServer.Guess")
+    @Label("Guess")
+    @Description("A guess applied to a puzzle")
+    @Category({ CATEGORY, "Puzzle" })
+    @StackTrace(false)
+    static class Guess extends Event {
+        @Label("Guess Length")
+        int length;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Successful")
+        boolean successful;
+    }
+
+    /**
+     * Starts timing an account operation.
+     *
+     * @param operation - The operation (e.g. "open", "save").
+     * @param username  - The user operated on, or null if there is none.
+     * @return - The event, to be committed once the operation completes.
+     */
+    static AccountOperation beginAccountOperation(String operation, String username) {
+        AccountOperation event = new AccountOperation();
+        event.operation = operation;
+        event.username = username;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts timing a guess, if a recording enables guess events.
+     *
+     * @return - The event, to be committed once the guess is applied, or null
+     *         if guess events are disabled.
+     */
+    static Guess beginGuess() {
+        if (!GUESS_TYPE.isEnabled()) {
+            return null;
+        }
+        Guess event = new Guess();
+        event.begin();
+        return event;
+    }
+}
@@ -1,7 +1,9 @@
 package GameServer;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Base64;
 
 /**
  * Represents the state of the game.
@@ -12,6 +14,16 @@ public class GameState {
     private String[] words;
     private Puzzle puzzle;
 
+    // The day (UTC) of the daily puzzle being played, or null for other games
+    private LocalDate dailyDate;
+
+    // Number of guesses logged as events since the last full snapshot
+    private int loggedGuesses;
+
+    // Whether the words and puzzle were dropped to save memory (see
+    // SessionMemory)
+    private boolean unloaded;
+
     /**
      * Constructs a game state with an idle state.
      */
@@ -24,16 +36,23 @@ public class GameState {
      * 
      * @param attempts - The number of attempts.
      * @param words    - The array of words.
+     * @param puzzle   - The puzzle laid out from the words.
      */
-    public GameState(int attempts, String[] words) {
+    public GameState(int attempts, String[] words, Puzzle puzzle) {
         this.state = Constants.PLAY_STATE;
         this.attempts = attempts;
         this.words = words;
-        this.puzzle = new Puzzle(this.words);
+        this.puzzle = puzzle;
     }
 
     /**
-     * Constructs a game state from serialized data.
+     * Constructs a game state from serialized data. The data is a snapshot,
+     * optionally followed by guess events logged since the snapshot was taken,
+     * which are replayed onto the puzzle.
+     * 
+     * The snapshot is either a single "Game;" line holding the binary encoding
+     * (see getGameStateString), or, for data saved by older versions, the
+     * attempts, words, and the puzzle and solution grids as text.
      * 
      * @param data - The serialized data representing the game state.
      */
@@ -41,15 +60,88 @@ public class GameState {
         String[] lines = data.trim().split("\n");
         this.state = lines[0].split(";")[1];
         if (this.state.equals(Constants.PLAY_STATE)) {
-            this.attempts = Integer.parseInt(lines[1].split(";")[1]);
-            String wordsData = lines[2].split(";")[1];
-            this.words = wordsData.split(",");
+            int i;
+            if (lines[1].startsWith(Constants.BINARY_GAME_PREFIX)) {
+                decode(lines[1].substring(Constants.BINARY_GAME_PREFIX.length()));
+                i = 2;
+            } else {
+                this.attempts = Integer.parseInt(lines[1].split(";")[1]);
+                String wordsData = lines[2].split(";")[1];
+                this.words = wordsData.split(",");
+                for (int j = 0; j < this.words.length; j++) {
+                    this.words[j] = this.words[j].trim();
+                }
+
+                StringBuilder puzzleData = new StringBuilder();
+                i = 3;
+                for (; i < lines.length && !lines[i].startsWith(Constants.GUESS_EVENT); i++) {
+                    puzzleData.append(lines[i]).append("\n");
+                }
+                this.puzzle = new Puzzle(this.words[0], puzzleData.toString());
+            }
+
+            for (; i < lines.length; i++) {
+                replayGuess(lines[i]);
+            }
+        }
+    }
 
-            StringBuilder puzzleData = new StringBuilder();
-            for (int i = 3; i < lines.length; i++) {
-                puzzleData.append(lines[i]).append("\n");
+    /**
+     * Decodes the binary encoding of a game in play: the format version, the
+     * number of attempts, the day of a daily puzzle (from version 2), and the
+     * puzzle.
+     * 
+     * @param encoded - The Base64 encoded game.
+     */
+    private void decode(String encoded) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            int version = in.readUnsignedByte();
+            if (version < 1 || version > Constants.GAME_STATE_VERSION) {
+                throw new IllegalArgumentException("Unsupported game state version: " + version);
             }
-            this.puzzle = new Puzzle(this.words[0], puzzleData.toString());
+            this.attempts = in.readUnsignedByte();
+            if (version >= 2) {
+                long day = in.readInt();
+                this.dailyDate = day < 0 ? null : LocalDate.ofEpochDay(day);
+            }
+            this.puzzle = Puzzle.read(in);
+            this.words = this.puzzle.getWords();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt game state.", e);
+        }
+    }
+
+    /**
+     * Encodes a game in play in binary.
+     * 
+     * @return - The Base64 encoded game.
+     */
+    private String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(Constants.GAME_STATE_VERSION);
+            out.writeByte(this.attempts);
+            out.writeInt(this.dailyDate == null ? -1 : (int) this.dailyDate.toEpochDay());
+            this.puzzle.write(out);
+        } catch (IOException e) {
+            // Not thrown when writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Replays a guess event of the form "Guess;attempts;guess" onto the puzzle.
+     * 
+     * @param event - The guess event.
+     */
+    private void replayGuess(String event) {
+        String[] parts = event.split(";", 3);
+        if (parts.length == 3 && parts[0].equals(Constants.GUESS_EVENT)) {
+            this.puzzle.replayGuess(parts[2]);
+            this.attempts = Integer.parseInt(parts[1]);
+            this.loggedGuesses++;
         }
     }
 
@@ -87,6 +179,34 @@ public class GameState {
         this.attempts--;
     }
 
+    /**
+     * Gets the number of guesses logged as events since the last snapshot.
+     * 
+     * @return - The number of logged guesses.
+     */
+    public int getLoggedGuesses() {
+        return this.loggedGuesses;
+    }
+
+    /**
+     * Creates an event recording a guess and the resulting number of attempts
+     * remaining, and counts it as logged.
+     * 
+     * @param guess - The guess made by the user.
+     * @return - The guess event, terminated with a newline.
+     */
+    public String logGuess(String guess) {
+        this.loggedGuesses++;
+        return Constants.GUESS_EVENT + ";" + this.attempts + ";" + guess + "\n";
+    }
+
+    /**
+     * Resets the number of logged guesses, e.g. after a snapshot is taken.
+     */
+    public void clearLoggedGuesses() {
+        this.loggedGuesses = 0;
+    }
+
     /**
      * Gets the array of words.
      * 
@@ -96,6 +216,24 @@ public class GameState {
         return this.words;
     }
 
+    /**
+     * Gets the day of the daily puzzle being played.
+     * 
+     * @return - The day (UTC), or null if the game isn't a daily puzzle.
+     */
+    public LocalDate getDailyDate() {
+        return this.dailyDate;
+    }
+
+    /**
+     * Marks the game as the daily puzzle of the given day.
+     * 
+     * @param dailyDate - The day (UTC) of the daily puzzle.
+     */
+    public void setDailyDate(LocalDate dailyDate) {
+        this.dailyDate = dailyDate;
+    }
+
     /**
      * Gets the puzzle.
      * 
@@ -106,7 +244,61 @@ public class GameState {
     }
 
     /**
-     * Gets the string representation of the game state.
+     * Drops the words and puzzle to save memory, once they have been saved.
+     * The game state must be reloaded before it is used again.
+     */
+    public void unload() {
+        this.words = null;
+        this.puzzle = null;
+        this.unloaded = true;
+    }
+
+    /**
+     * Checks whether the words and puzzle have been dropped.
+     * 
+     * @return - True if the game state must be reloaded before use.
+     */
+    public boolean isUnloaded() {
+        return this.unloaded;
+    }
+
+    /**
+     * Restores an unloaded game state from its saved copy.
+     * 
+     * @param saved - The game state loaded from the saved data.
+     */
+    public void reload(GameState saved) {
+        this.state = saved.state;
+        this.attempts = saved.attempts;
+        this.words = saved.words;
+        this.puzzle = saved.puzzle;
+        this.dailyDate = saved.dailyDate;
+        this.loggedGuesses = saved.loggedGuesses;
+        this.unloaded = false;
+    }
+
+    /**
+     * Estimates the heap retained by the game state.
+     * 
+     * @return - The estimate, in bytes.
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 40;
+        // Words taken from the puzzle are counted with its template
+        if (this.words != null && (this.puzzle == null || this.words != this.puzzle.getWords())) {
+            bytes += SessionMemory.stringArrayBytes(this.words);
+        }
+        if (this.puzzle != null) {
+            bytes += this.puzzle.estimateRetainedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the string representation of the game state. A game in play is
+     * written as a single "Game;" line holding its binary encoding: the words,
+     * the placement of each leaf, and a bit per revealed character, from which
+     * the grids are laid out again when it is read.
      * 
      * @return - The string representation of the game state.
      */
@@ -116,18 +308,7 @@ public class GameState {
         stringBuilder.append("State;").append(this.state).append("\n");
 
         if (this.state.equals(Constants.PLAY_STATE)) {
-            stringBuilder.append("Attempts;").append(this.attempts).append("\n");
-
-            stringBuilder.append("Words;");
-            for (int i = 0; i < this.words.length; i++) {
-                stringBuilder.append(this.words[i]);
-                if (i < words.length - 1) {
-                    stringBuilder.append(", ");
-                }
-            }
-
-            stringBuilder.append("\n").append(this.puzzle.getPuzzleString());
-            stringBuilder.append("$\n").append(this.puzzle.getSolutionString());
+            stringBuilder.append(Constants.BINARY_GAME_PREFIX).append(encode()).append("\n");
         }
         String gameStateString = stringBuilder.toString();
         return gameStateString;
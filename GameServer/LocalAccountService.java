@@ -0,0 +1,74 @@
+package GameServer;
+
+import UserAccountServer.UserAccountServer;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * User account microservice running in the game server's own process, called
+ * directly instead of over TCP. Used by the embedded deployment, where the
+ * game server is the only instance, so its logins are not leased.
+ */
+class LocalAccountService implements AccountService {
+    @Override
+    public String openSession(String username) throws IOException {
+        long start = System.nanoTime();
+        GameEvents.AccountOperation event = GameEvents.beginAccountOperation("open", username);
+        try {
+            return UserAccountServer.openSession(username, "");
+        } finally {
+            event.commit();
+            Tracer.record("UserAccountServer", "open", start);
+        }
+    }
+
+    @Override
+    public String load(String username) throws IOException {
+        long start = System.nanoTime();
+        GameEvents.AccountOperation event = GameEvents.beginAccountOperation("load", username);
+        try {
+            return UserAccountServer.load(username);
+        } finally {
+            event.commit();
+            Tracer.record("UserAccountServer", "load", start);
+        }
+    }
+
+    @Override
+    public void renewLease() {
+    }
+
+    @Override
+    public int releaseLogins() {
+        return 0;
+    }
+
+    @Override
+    public int logout(String username) {
+        long start = System.nanoTime();
+        GameEvents.AccountOperation event = GameEvents.beginAccountOperation("logout", username);
+        try {
+            return UserAccountServer.logout(username, "");
+        } finally {
+            event.commit();
+            Tracer.record("UserAccountServer", "logout", start);
+        }
+    }
+
+    @Override
+    public int saveBatch(ArrayList<Record> records) {
+        long start = System.nanoTime();
+        GameEvents.AccountOperation event = GameEvents.beginAccountOperation("batch", null);
+        int saved = 0;
+        for (Record record : records) {
+            switch (record.operation) {
+                case "save" -> saved += UserAccountServer.save(record.username, record.data);
+                case "append" -> saved += UserAccountServer.append(record.username, record.data);
+            }
+        }
+        event.failed = saved != records.size();
+        event.commit();
+        Tracer.record("UserAccountServer", "batch", start);
+        return saved;
+    }
+}
@@ -0,0 +1,62 @@
+package GameServer;
+
+import DatabaseServer.DatabaseServer;
+import java.io.IOException;
+
+/**
+ * Word database running in the game server's own process, called directly
+ * instead of over UDP. Used by the embedded deployment.
+ */
+class LocalWordService implements WordService {
+    private final DatabaseServer database;
+
+    /**
+     * Constructs a client of an in-process word database.
+     *
+     * @param database - The word database, with its words loaded.
+     */
+    public LocalWordService(DatabaseServer database) {
+        this.database = database;
+    }
+
+    @Override
+    public String request(char command, String payload) throws IOException {
+        long start = System.nanoTime();
+        GameEvents.WordServiceRequest event = new GameEvents.WordServiceRequest();
+        event.begin();
+        event.opcode = command;
+        event.requestBytes = payload.length() + 2;
+        String response = null;
+        try {
+            response = switch (command) {
+                case 'A' -> this.database.addWord(payload);
+                case 'B' -> this.database.removeWord(payload);
+                case 'C' -> this.database.findWord(payload);
+                case 'D' -> this.database.randomWord(payload);
+                case 'E' -> this.database.randomWordLength(payload);
+                default -> "error detected";
+            };
+            return response;
+        } finally {
+            if (response != null) {
+                event.responseBytes = response.length();
+            }
+            event.commit();
+            Tracer.record("DatabaseServer", String.valueOf(command), start);
+        }
+    }
+
+    @Override
+    public String[] requestAll(char command, String[] payloads, long deadline, Runnable onResponse)
+            throws IOException {
+        String[] responses = new String[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException(Constants.PUZZLE_GENERATION_TIMEOUT);
+            }
+            responses[i] = request(command, payloads[i]);
+            onResponse.run();
+        }
+        return responses;
+    }
+}
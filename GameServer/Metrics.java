@@ -0,0 +1,269 @@
+package GameServer;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the game server's metrics: counters, gauges and latency
+ * histograms. Metrics are identified by name, which may include labels in the
+ * form name{label="value"}.
+ *
+ * Recording a metric only updates striped counters (LongAdder), so it does not
+ * contend between threads. All metrics can be read in a plaintext format,
+ * either through a local scrape endpoint (which accepts HTTP GET requests,
+ * or a plain connection), or through JMX. The scrape endpoint also serves the
+ * game server's trace spans at /traces.
+ */
+class Metrics {
+    /*
+     * Upper bounds (ms) of the latency histogram buckets. Latencies above the
+     * last bound fall in an overflow bucket.
+     */
+    private static final long[] LATENCY_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1000, 2000, 5000, 10000 };
+
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            this.count.increment();
+        }
+
+        public void add(long amount) {
+            this.count.add(amount);
+        }
+
+        public long get() {
+            return this.count.sum();
+        }
+    }
+
+    /**
+     * A distribution of latencies, with a count per bucket, plus the total
+     * count and sum.
+     */
+    public static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records the time elapsed since a start time.
+         *
+         * @param startNanos - The start time, from System.nanoTime().
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Records a latency.
+         *
+         * @param nanos - The latency in nanoseconds.
+         */
+        public void record(long nanos) {
+            long millis = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < LATENCY_BOUNDS.length && millis > LATENCY_BOUNDS[bucket]) {
+                bucket++;
+            }
+            this.buckets[bucket].increment();
+            this.count.increment();
+            this.sumNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Gets (or creates) the counter with the given name.
+     *
+     * @param name - The name of the counter.
+     * @return - The counter.
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Gets (or creates) the histogram with the given name.
+     *
+     * @param name - The name of the histogram.
+     * @return - The histogram.
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, whose value is read whenever metrics are reported.
+     *
+     * @param name  - The name of the gauge.
+     * @param value - Supplies the current value of the gauge.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Gets the current value of every counter and gauge, and the count and sum
+     * (ms) of every histogram.
+     *
+     * @return - A map from metric name to value, sorted by name.
+     */
+    public static Map<String, Long> getValues() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            values.put(withSuffix(name, "_count"), histogram.count.sum());
+            values.put(withSuffix(name, "_sum"), histogram.sumNanos.sum() / 1_000_000);
+        });
+        return values;
+    }
+
+    /**
+     * Exports every metric in a plaintext format, one value per line. Each
+     * histogram bucket is reported cumulatively, labelled with its upper bound
+     * (ms).
+     *
+     * @return - The plaintext representation of all metrics.
+     */
+    public static String scrape() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : getValues().entrySet()) {
+            stringBuilder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        new TreeMap<>(histograms).forEach((name, histogram) -> {
+            long cumulative = 0;
+            for (int i = 0; i < histogram.buckets.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                String bound = i < LATENCY_BOUNDS.length ? String.valueOf(LATENCY_BOUNDS[i]) : "+Inf";
+                stringBuilder.append(withLabel(withSuffix(name, "_bucket"), "le", bound))
+                        .append(' ').append(cumulative).append('\n');
+            }
+        });
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Appends a label to a metric name.
+     *
+     * @param name  - The metric name, with or without labels.
+     * @param label - The label name.
+     * @param value - The label value.
+     * @return - The metric name with the label.
+     */
+    public static String withLabel(String name, String label, String value) {
+        String labelString = label + "=\"" + value + "\"";
+        if (name.indexOf('{') < 0) {
+            return name + "{" + labelString + "}";
+        }
+        return name.substring(0, name.length() - 1) + "," + labelString + "}";
+    }
+
+    private static String withSuffix(String name, String suffix) {
+        int labelsStart = name.indexOf('{');
+        if (labelsStart < 0) {
+            return name + suffix;
+        }
+        return name.substring(0, labelsStart) + suffix + name.substring(labelsStart);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, under
+     * GameServer:type=Metrics.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean() {
+                @Override
+                public Map<String, Long> getValues() {
+                    return Metrics.getValues();
+                }
+
+                @Override
+                public String getScrape() {
+                    return Metrics.scrape();
+                }
+            }, new ObjectName("GameServer:type=Metrics"));
+        } catch (JMException e) {
+            System.out.println("Could not register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the plaintext metrics on a local port, in the background. Each
+     * connection receives the metrics as an HTTP response and is closed.
+     *
+     * @param port - The port to listen on (on the loopback interface only).
+     */
+    public static void startScrapeEndpoint(int port) {
+        Thread thread = new Thread(() -> {
+            try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                while (true) {
+                    try (Socket socket = serverSocket.accept()) {
+                        socket.setSoTimeout(1000);
+                        respond(socket);
+                    } catch (IOException e) {
+                        // Ignore clients that disconnect or send nothing
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println(Constants.SOCKET_ERROR_OPEN_METRICS);
+            }
+        }, "metrics-endpoint");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the request (if any) and writes the metrics, or the recorded trace
+     * spans if the request is for /traces.
+     */
+    private static void respond(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        String requestLine = null;
+        try {
+            requestLine = in.readLine();
+            String line = requestLine;
+            while (line != null && !line.isEmpty()) {
+                line = in.readLine();
+            }
+        } catch (SocketTimeoutException e) {
+            // Plain connection without a request
+        }
+
+        boolean traces = requestLine != null && requestLine.startsWith("GET /traces");
+        byte[] body = (traces ? Tracer.dump(Integer.MAX_VALUE) : scrape())
+                .getBytes(StandardCharsets.UTF_8);
+        OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.0 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(body);
+        out.flush();
+    }
+}
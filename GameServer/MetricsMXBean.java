@@ -0,0 +1,23 @@
+package GameServer;
+
+import java.util.Map;
+
+/**
+ * JMX view of the game server's metrics.
+ */
+public interface MetricsMXBean {
+    /**
+     * Gets the current value of every counter and gauge, and the count and sum
+     * (ms) of every histogram.
+     *
+     * @return - A map from metric name to value.
+     */
+    Map<String, Long> getValues();
+
+    /**
+     * Gets every metric, including histogram buckets, in plaintext.
+     *
+     * @return - The plaintext representation of all metrics.
+     */
+    String getScrape();
+}
@@ -1,47 +1,58 @@
 package GameServer;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Random;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * Represents a puzzle with a stem, dimensions, and two 2D char grids.
+ * A player's view of a puzzle: the shared, immutable template it is laid out
+ * from (see PuzzleTemplate), and a mask of the cells revealed to the player.
  */
 class Puzzle {
-    private String stem;
+    private static final char HIDDEN = '-';
 
-    // Puzzle height and width (i.e., rows/columns, respectively)
-    private int rows;
-    private int columns;
+    private final PuzzleTemplate template;
 
     /*
-     * Each puzzle has 2 2-D char "grids"
-     * 1 to represent the current puzzle state displayed to the player
-     * 1 to represent the solved puzzle
+     * The puzzle displayed to the player is the template's solution grid with
+     * every unrevealed word character replaced by a '-'. Cell (i, j) is
+     * revealed if bit i * columns + j of the mask is set, and the number of
+     * word characters still hidden is kept, so checking if the puzzle is
+     * solved takes constant time.
      */
-    private char[][] puzzleGrid;
-    private char[][] solutionGrid;
+    private long[] revealed;
+    private int hiddenCells;
+
+    /*
+     * Each row of the puzzle as displayed, encoded as bytes (terminated with a
+     * newline), so that it can be copied straight into a response. A row is
+     * only rendered again once a guess reveals one of its cells.
+     */
+    private byte[][] renderedRows;
+    private boolean[] staleRows;
 
     /**
-     * Constructs a Puzzle object with the given words.
+     * Constructs a Puzzle object from a layout of the given words.
      * 
-     * @param words - An array of words used to create the puzzle.
+     * @param words             - The stem followed by the leaves.
+     * @param rows              - The row of the stem each leaf is placed in.
+     * @param connectingIndices - The index of the character through which
+     *                          each leaf connects to the stem.
      */
-    public Puzzle(String[] words) {
-        this.stem = words[0].toLowerCase();
-        this.rows = stem.length();
-
-        int longestLeafLength = this.findLongestLeafLength(words);
-        this.columns = longestLeafLength * 2 + 1;
-        if(longestLeafLength % 2 == 0){
-            this.columns++;
-        }
+    public Puzzle(String[] words, int[] rows, int[] connectingIndices) {
+        this(new PuzzleTemplate(words, rows, connectingIndices));
+    }
 
-        this.puzzleGrid = createDefaultGrid();
-        this.solutionGrid = createDefaultGrid();
-        populateSolutionGrid(words);
-        initializePuzzleGrid();
+    /**
+     * Constructs a new, fully hidden Puzzle object from a template.
+     * 
+     * @param template - The template, which may be shared with other players.
+     */
+    public Puzzle(PuzzleTemplate template) {
+        this.template = template;
+        initializeMask(null);
     }
 
     /**
@@ -51,196 +62,137 @@ class Puzzle {
      * @param puzzleData - The puzzle data containing the grid strings.
      */
     public Puzzle(String stem, String puzzleData) {
-        this.stem = stem;
-
         String[] gridStrings = puzzleData.split("\\$");
 
         String gridString = gridStrings[0].trim();
-        this.rows = gridString.split("\n").length;
-        this.columns = gridString.indexOf('\n') - 1;
-        this.puzzleGrid = convertStringToGrid(gridString, this.rows, this.columns);
+        int rows = gridString.split("\n").length;
+        int columns = gridString.indexOf('\n');
+        char[][] puzzleGrid = convertStringToGrid(gridString, rows, columns);
 
+        // Without a solution, only what the player has revealed is known
         if (gridStrings.length > 1) {
             String solutionString = gridStrings[1].trim();
-            this.solutionGrid = convertStringToGrid(solutionString, this.rows, this.columns);
+            this.template = new PuzzleTemplate(stem, convertStringToGrid(solutionString, rows, columns));
+        } else {
+            this.template = new PuzzleTemplate(stem, puzzleGrid);
         }
+        initializeMask(puzzleGrid);
     }
 
     /**
-     * Finds the length of the longest word (leaf) in the given array of words.
-     * 
-     * @param words - An array of words.
-     * @return - The length of the longest word in the array.
-     */
-    private int findLongestLeafLength(String[] words) {
-        int length = 0;
-        for (int i = 1; i < words.length; i++)
-            if (words[i].length() > length)
-                length = words[i].length();
-        return length;
-    }
-
-    /**
-     * Initializes a grid where each row contains a series of '*' terminated with a
-     * '+'.
+     * Reads a puzzle written by write: the template is laid out again (or the
+     * shared template with the same layout is used), and the mask of revealed
+     * cells is restored.
      * 
-     * @return - The initialized grid.
+     * @param in - The stream to read from.
+     * @return - The puzzle.
+     * @throws IOException - If the puzzle could not be read.
      */
-    private char[][] createDefaultGrid() {
-        char[][] grid = new char[this.rows][this.columns];
-        for (int i = 0; i < this.rows; i++) {
-            for (int j = 0; j < this.columns; j++)
-                if (j == this.columns - 1) {
-                    grid[i][j] = '+';
-                } else {
-                    grid[i][j] = '.';
+    public static Puzzle read(DataInputStream in) throws IOException {
+        Puzzle puzzle = new Puzzle(PuzzleTemplate.read(in));
+
+        byte[] revealedCells = new byte[in.readUnsignedShort()];
+        in.readFully(revealedCells);
+        int cell = 0;
+        for (int i = 0; i < puzzle.template.getRows(); i++) {
+            for (int j = 0; j < puzzle.template.getColumns(); j++) {
+                if (puzzle.template.isWordCell(i, j)) {
+                    if (cell / 8 < revealedCells.length && (revealedCells[cell / 8] & (1 << (cell % 8))) != 0) {
+                        puzzle.reveal(i, j);
+                    }
+                    cell++;
                 }
-        }
-        return grid;
-    }
-
-    /**
-     * Populates the solution grid using an array of words.
-     * 
-     * @param words - An array of words.
-     */
-    private void populateSolutionGrid(String[] words) {
-
-        for (int i = 0; i < words.length; i++) {
-            words[i] = words[i].toLowerCase(); // For case-insensitive search
-        }
-
-        // Insert stem
-        char[] stemArray = words[0].toCharArray();
-        int stemColumn = (this.columns - 2) / 2;
-        for (int i = 0; i < stemArray.length; i++) {
-            this.solutionGrid[i][stemColumn] = stemArray[i];
-        }
-
-        // Construct/sort Leaf ArrayList
-        String[] leaves = new String[words.length - 1];
-        for (int i = 1; i < words.length; i++) {
-            leaves[i - 1] = words[i];
-        }
-        ArrayList<Leaf> matchingRows = findMatchingRows(stemArray, leaves);
-        Collections.sort(matchingRows, Comparator
-                .comparingInt(leaf -> leaf.getMatchingIndices().size()));
-
-        for (int i = 0; i < matchingRows.size(); i++) {
-            // Find random valid row in Stem
-            Leaf currentLeaf = matchingRows.get(i);
-            ArrayList<Integer> currentMatches = currentLeaf.getMatchingIndices();
-            int randomMatchingRow = currentMatches
-                    .get(new Random().nextInt(currentMatches.size()));
-
-            // Insert Leaf at random valid column, remove index, resort Leaf ArrayList
-            insertLeaf(currentLeaf, stemArray[randomMatchingRow],
-                    randomMatchingRow, stemColumn);
-            for (int j = i; j < leaves.length; j++) {
-                matchingRows.get(j).removeIndex(Integer.valueOf(randomMatchingRow));
             }
-            Collections.sort(matchingRows, Comparator
-                    .comparingInt(leaf -> leaf.getMatchingIndices().size()));
         }
+        return puzzle;
     }
 
     /**
-     * Represents a Leaf object associated with a word and its matching stem
-     * indices.
+     * Writes the puzzle compactly: its template's layout, and one bit per word
+     * character (in row-major order) that is set if the character is revealed.
+     * 
+     * @param out - The stream to write to.
+     * @throws IOException - If the puzzle could not be written.
      */
-    private class Leaf {
-        private String word;
-        private ArrayList<Integer> matchingStemIndices;
-
-        public Leaf(char[] stemArray, String leafWord) {
-            this.word = leafWord;
-            this.matchingStemIndices = new ArrayList<>();
-
-            /*
-             * Find all indices through which the Leaf
-             * may be connected to the Stem
-             */
-            for (int i = 0; i < stemArray.length; i++) {
-                if (word.contains(String.valueOf(stemArray[i]))) {
-                    this.matchingStemIndices.add(i);
+    public void write(DataOutputStream out) throws IOException {
+        this.template.write(out);
+
+        byte[] revealedCells = new byte[(this.template.getWordCellCount() + 7) / 8];
+        int cell = 0;
+        for (int i = 0; i < this.template.getRows(); i++) {
+            for (int j = 0; j < this.template.getColumns(); j++) {
+                if (this.template.isWordCell(i, j)) {
+                    if (isRevealed(i, j)) {
+                        revealedCells[cell / 8] |= 1 << (cell % 8);
+                    }
+                    cell++;
                 }
             }
         }
+        out.writeShort(revealedCells.length);
+        out.write(revealedCells);
+    }
 
-        public String getWord() {
-            return this.word;
-        }
-
-        public ArrayList<Integer> getMatchingIndices() {
-            return this.matchingStemIndices;
-        }
-
-        public void removeIndex(Integer Index) {
-            this.matchingStemIndices.remove(Index);
-        }
+    public PuzzleTemplate getTemplate() {
+        return this.template;
     }
 
     /**
-     * Finds and returns a list of Leaf objects with matching stem indices for each
-     * leaf word.
+     * Gets the stem followed by the leaves, in the order of their rows. The
+     * array is shared with the template, and must not be changed.
      * 
-     * @param stemArray - The array representing the stem.
-     * @param leaves    - An array of leaf words.
-     * @return - A list of Leaf objects with matching stem indices for each leaf
-     *         word.
+     * @return - The puzzle's words.
      */
-    private ArrayList<Leaf> findMatchingRows(char[] stemArray, String[] leaves) {
-        ArrayList<Leaf> matchingRows = new ArrayList<>();
-
-        for (int i = 0; i < leaves.length; i++) {
-            matchingRows.add(new Leaf(stemArray, leaves[i]));
-        }
-        return matchingRows;
+    public String[] getWords() {
+        return this.template.getWords();
     }
 
     /**
-     * Inserts a Leaf at a specified row and random valid column.
+     * Initializes the mask of revealed cells.
+     * Every "word" character (i.e., every character that isn't a '.' or a '+')
+     * starts hidden, unless it is shown in the given puzzle grid.
      * 
-     * @param leaf              The Leaf object to insert.
-     * @param matchingCharacter The character in the leaf word that matches the
-     *                          stem.
-     * @param matchingRow       The row in the solution grid where the leaf will be
-     *                          inserted.
-     * @param stemColumn        The column of the stem in the solution grid.
+     * @param puzzleGrid - The puzzle grid displayed to the player, or null for
+     *                   a new puzzle.
      */
-    private void insertLeaf(Leaf leaf, char matchingCharacter,
-            int matchingRow, int stemColumn) {
-        char[] leafArray = leaf.getWord().toCharArray();
-        ArrayList<Integer> matchingIndices = new ArrayList<>();
-        for (int i = 0; i < leafArray.length; i++) {
-            if (leafArray[i] == matchingCharacter)
-                matchingIndices.add(i);
+    private void initializeMask(char[][] puzzleGrid) {
+        int rows = this.template.getRows();
+        int columns = this.template.getColumns();
+        this.revealed = new long[(rows * columns + 63) / 64];
+        this.hiddenCells = this.template.getWordCellCount();
+        this.renderedRows = new byte[rows][];
+        this.staleRows = new boolean[rows];
+        Arrays.fill(this.staleRows, true);
+        if (puzzleGrid == null) {
+            return;
         }
-        int randomMatchingIndex = matchingIndices
-                .get(new Random().nextInt(matchingIndices.size()));
-
-        /*
-         * (Horizontal) offset is x indices left of the Stem (central)
-         * column, where x is the number of characters preceding the
-         * connecting character
-         */
-        int offset = stemColumn - randomMatchingIndex;
-        for (int i = 0; i < leafArray.length; i++) {
-            this.solutionGrid[matchingRow][i + offset] = leafArray[i];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (this.template.isWordCell(i, j) && j < puzzleGrid[i].length && puzzleGrid[i][j] != HIDDEN) {
+                    reveal(i, j);
+                }
+            }
         }
     }
 
+    private boolean isRevealed(int row, int column) {
+        int bit = row * this.template.getColumns() + column;
+        return (this.revealed[bit >>> 6] & (1L << bit)) != 0;
+    }
+
     /**
-     * Constructs the initial puzzle grid.
-     * The initial puzzle grid is a copy of the solution grid, where every
-     * "word" character (i.e., every character that isn't a '.' or a '+')
-     * is replaced with a '-'.
+     * Reveals a word cell, if it is hidden.
      */
-    private void initializePuzzleGrid() {
-        for (int i = 0; i < this.rows; i++) {
-            String row = new String(this.solutionGrid[i]);
-            row = row.replaceAll("[^.+]", "-");
-            this.puzzleGrid[i] = row.toCharArray();
+    private void reveal(int row, int column) {
+        reveal(row * this.template.getColumns() + column);
+    }
+
+    private void reveal(int bit) {
+        long mask = 1L << bit;
+        if ((this.revealed[bit >>> 6] & mask) == 0) {
+            this.revealed[bit >>> 6] |= mask;
+            this.hiddenCells--;
+            this.staleRows[bit / this.template.getColumns()] = true;
         }
     }
 
@@ -252,11 +204,11 @@ class Puzzle {
      * @param columns    - The number of columns in the grid.
      * @return - The 2D char array representation of the grid.
      */
-    private char[][] convertStringToGrid(String gridString, int rows, int columns) {
+    private static char[][] convertStringToGrid(String gridString, int rows, int columns) {
         String[] grid1D = gridString.split("\n");
         char[][] grid2D = new char[rows][columns];
         for (int i = 0; i < grid1D.length; i++) {
-            grid2D[i] = grid1D[i].toCharArray();
+            grid1D[i].getChars(0, Math.min(columns, grid1D[i].length()), grid2D[i], 0);
         }
 
         return grid2D;
@@ -279,49 +231,153 @@ class Puzzle {
      * @return - true if the puzzle grid was updated successfully, false otherwise.
      */
     public boolean updatePuzzleGrid(String input) {
-        input = input.toLowerCase(); // For case-insensitive search
-        char[] inputArray = input.toCharArray();
-        boolean updated = false;
+        GameEvents.Guess event = GameEvents.beginGuess();
+        boolean successful = applyGuess(input);
+        if (event != null && event.shouldCommit()) {
+            event.length = input.length();
+            event.rows = this.template.getRows();
+            event.columns = this.template.getColumns();
+            event.successful = successful;
+            event.commit();
+        }
+        return successful;
+    }
+
+    /**
+     * Applies a guess replayed from a saved game's event log. Unlike
+     * updatePuzzleGrid, it isn't recorded as a guess event, as the player
+     * didn't make it now.
+     * 
+     * @param input - The guess.
+     */
+    void replayGuess(String input) {
+        applyGuess(input);
+    }
+
+    /*
+     * Guesses are looked up in the indexes, so their cost is proportional to
+     * the number of cells they reveal rather than the size of the grid.
+     */
+    private boolean applyGuess(String input) {
         // Single character input
         if (input.length() == 1) {
-            for (int i = 0; i < this.rows; i++) {
-                for (int j = 0; j < this.columns; j++) {
-                    if (this.solutionGrid[i][j] == inputArray[0]) {
-                        this.puzzleGrid[i][j] = inputArray[0];
-                        updated = true;
-                    }
-                }
+            int[] cells = this.template.getLetterCells(Character.toLowerCase(input.charAt(0)));
+            if (cells == null) {
+                return false;
             }
-        } else {
-            // Multiple character input - stem match
-            if (input.equals(this.stem)) {
-                for (int i = 0; i < this.rows; i++) {
-                    this.puzzleGrid[i][(this.columns - 2) / 2] = inputArray[i];
-                }
-                return true;
+            for (int cell : cells) {
+                reveal(cell);
             }
+            return true;
+        }
 
-            // Multiple character input - leaf match
-            for (int i = 0; i < this.rows; i++) {
-                String leaf = new String(this.solutionGrid[i])
-                        .replaceAll("[.+]", "");
-                if (leaf.equals(input)) {
-                    this.puzzleGrid[i] = this.solutionGrid[i];
-                    return true;
-                }
+        // Multiple character input - stem match
+        if (input.equalsIgnoreCase(this.template.getStem())) {
+            int stemColumn = this.template.getStemColumn();
+            for (int i = 0; i < this.template.getRows(); i++) {
+                reveal(i, stemColumn);
             }
+            return true;
+        }
+
+        // Multiple character input - leaf match (toLowerCase only copies
+        // input that isn't already lower case)
+        Integer first = this.template.getLeafCell(input.toLowerCase());
+        if (first == null) {
+            return false;
+        }
+        for (int i = 0; i < input.length(); i++) {
+            reveal(first + i);
         }
-        return updated;
+        return true;
     }
 
     /**
-     * Checks if the puzzle is complete (i.e., puzzle grid matches the solution
-     * grid).
+     * Copies the mask of revealed cells, e.g. to find the cells changed by a
+     * guess.
+     * 
+     * @return - A copy of the mask.
+     */
+    public long[] copyRevealedMask() {
+        return this.revealed.clone();
+    }
+
+    /**
+     * Finds the cells revealed since an earlier copy of the mask.
+     * 
+     * @param before - The earlier copy of the mask.
+     * @return - The row and column of each changed cell, in pairs.
+     */
+    public int[] getChangedCells(long[] before) {
+        int count = 0;
+        for (int i = 0; i < this.revealed.length; i++) {
+            count += Long.bitCount(this.revealed[i] & ~before[i]);
+        }
+
+        int[] cells = new int[count * 2];
+        count = 0;
+        for (int i = 0; i < this.revealed.length; i++) {
+            for (long changed = this.revealed[i] & ~before[i]; changed != 0; changed &= changed - 1) {
+                int bit = i * 64 + Long.numberOfTrailingZeros(changed);
+                cells[count++] = bit / this.template.getColumns();
+                cells[count++] = bit % this.template.getColumns();
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Gets a cell of the puzzle grid.
+     * 
+     * @param row    - The row of the cell.
+     * @param column - The column of the cell.
+     * @return - The character displayed in the cell.
+     */
+    public char getPuzzleCell(int row, int column) {
+        if (this.template.isWordCell(row, column) && !isRevealed(row, column)) {
+            return HIDDEN;
+        }
+        return this.template.getSolutionCell(row, column);
+    }
+
+    /**
+     * Estimates the heap retained by the puzzle: its mask and rendered rows,
+     * and its template unless the template is shared.
+     * 
+     * @return - The estimate, in bytes.
+     */
+    public long estimateRetainedBytes() {
+        int rows = this.template.getRows();
+        long bytes = 40 + 16 + 8L * this.revealed.length + 16 + 4L * rows + 16 + rows;
+        for (byte[] row : this.renderedRows) {
+            bytes += row == null ? 0 : 16 + row.length;
+        }
+        if (!this.template.isShared()) {
+            bytes += this.template.estimateRetainedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks if the puzzle is complete (i.e., every word character has been
+     * revealed).
      * 
      * @return - true if the puzzle is solved, false otherwise.
      */
     public boolean checkPuzzleSolved() {
-        return (gridToString(this.puzzleGrid).equals(gridToString(this.solutionGrid)));
+        return this.hiddenCells == 0;
+    }
+
+    /**
+     * Writes the puzzle, as displayed to the player, to a response. Only rows
+     * changed since the puzzle was last written are rendered again.
+     * 
+     * @param out - The response to write to.
+     */
+    public void writePuzzle(ResponseWriter out) {
+        for (int i = 0; i < this.template.getRows(); i++) {
+            out.write(getRenderedRow(i));
+        }
     }
 
     /**
@@ -330,29 +386,53 @@ class Puzzle {
      * @return - The string representation of the puzzle grid.
      */
     public String getPuzzleString() {
-        return gridToString(this.puzzleGrid);
+        int rows = this.template.getRows();
+        StringBuilder stringBuilder = new StringBuilder(rows * (this.template.getColumns() + 1));
+        for (int i = 0; i < rows; i++) {
+            stringBuilder.append(new String(getRenderedRow(i), StandardCharsets.UTF_8));
+        }
+        return stringBuilder.toString();
     }
 
     /**
-     * Exports the solved puzzle as a string.
-     * 
-     * @return - The string representation of the solution grid.
+     * Gets a row as displayed, rendering it again if it has changed. ASCII
+     * rows (the usual case) are rendered in place, reusing the row's buffer.
      */
-    public String getSolutionString() {
-        return gridToString(this.solutionGrid);
+    private byte[] getRenderedRow(int row) {
+        if (!this.staleRows[row]) {
+            return this.renderedRows[row];
+        }
+
+        int columns = this.template.getColumns();
+        byte[] rendered = this.renderedRows[row];
+        if (rendered == null || rendered.length != columns + 1) {
+            rendered = new byte[columns + 1];
+        }
+        for (int j = 0; j < columns; j++) {
+            char c = getPuzzleCell(row, j);
+            if (c >= 0x80) {
+                char[] cells = new char[columns];
+                for (int k = 0; k < columns; k++) {
+                    cells[k] = getPuzzleCell(row, k);
+                }
+                rendered = (new String(cells) + "\n").getBytes(StandardCharsets.UTF_8);
+                break;
+            }
+            rendered[j] = (byte) c;
+        }
+        rendered[rendered.length - 1] = '\n';
+
+        this.renderedRows[row] = rendered;
+        this.staleRows[row] = false;
+        return rendered;
     }
 
     /**
-     * Converts a 2D char array grid into a string.
+     * Exports the solved puzzle as a string.
      * 
-     * @param grid - The 2D char array grid to convert.
-     * @return - The string representation of the grid.
+     * @return - The string representation of the solution grid.
      */
-    private String gridToString(char[][] grid) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i < this.rows; i++) {
-            stringBuilder.append(grid[i]).append("\n");
-        }
-        return stringBuilder.toString();
+    public String getSolutionString() {
+        return this.template.getSolutionString();
     }
-}
\ No newline at end of file
+}
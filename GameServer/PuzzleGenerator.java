@@ -0,0 +1,360 @@
+package GameServer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.SplittableRandom;
+
+/**
+ * Lays out a crossword puzzle from a stem and a pool of candidate leaves.
+ *
+ * Each leaf is assigned to a distinct row of the stem whose letter it
+ * contains, by a backtracking search that always fills the most constrained
+ * row (the one with the fewest usable candidates) first. The search gives up
+ * at a hard deadline rather than exploring every assignment.
+ *
+ * Leaves can be limited to a maximum puzzle width. In the wide layout, the
+ * width only depends on the longest leaf, so longer leaves are never used. In
+ * the tight layout, the width is how far the placed leaves reach left of the
+ * stem plus how far they reach right of it, so the search tracks both extents
+ * as it places leaves. A leaf is only usable in a row if it connects through
+ * an occurrence of the row's letter that keeps the extents within the width,
+ * and each such occurrence is tried in turn, as it decides how much of the
+ * width is left for the other leaves.
+ *
+ * Every random choice (ordering of candidates, and which occurrence of the
+ * stem's letter a leaf connects through) comes from a SplittableRandom seeded
+ * by the caller, so a layout can be reproduced from its seed and words. The
+ * seeds of the word database's random choices of stem and candidates are
+ * drawn from a separate stream split from the same seed, so the words can be
+ * reproduced too, as long as the word database's contents are the same.
+ */
+class PuzzleGenerator {
+    private final SplittableRandom random;
+    private final SplittableRandom wordSeeds;
+    private final long seed;
+
+    // Maximum width of a puzzle, not counting the row terminator
+    private final int maxWidth;
+
+    // Search state: rowLeaves[row] is the index of the candidate placed in a
+    // decided row, or -1 if the row was left empty, and rowConnections[row]
+    // the index of the letter it connects through. The placed leaves reach
+    // left and right characters either side of the stem
+    private String stem;
+    private ArrayList<String> candidates;
+    private boolean[][] connects;
+    private int[] rowLeaves;
+    private int[] rowConnections;
+    private int left;
+    private int right;
+    private boolean[] decided;
+    private boolean[] used;
+    private int firstRow;
+    private long deadline;
+
+    /**
+     * A laid out puzzle: the stem followed by the leaves, the row each leaf is
+     * placed in, and the index of the letter each leaf connects to the stem
+     * through.
+     */
+    static class Layout {
+        final String[] words;
+        final int[] rows;
+        final int[] connectingIndices;
+
+        private Layout(String[] words, int[] rows, int[] connectingIndices) {
+            this.words = words;
+            this.rows = rows;
+            this.connectingIndices = connectingIndices;
+        }
+
+        /**
+         * Creates the puzzle described by this layout.
+         *
+         * @return - The puzzle.
+         */
+        Puzzle createPuzzle() {
+            return new Puzzle(createTemplate());
+        }
+
+        /**
+         * Creates the template described by this layout, e.g. to share it.
+         *
+         * @return - The template.
+         */
+        PuzzleTemplate createTemplate() {
+            return new PuzzleTemplate(this.words, this.rows, this.connectingIndices);
+        }
+    }
+
+    /**
+     * Constructs a puzzle generator.
+     *
+     * @param seed - The seed of every random choice made by the generator.
+     */
+    public PuzzleGenerator(long seed) {
+        this(seed, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a puzzle generator whose puzzles fit within a width.
+     *
+     * @param seed     - The seed of every random choice made by the generator.
+     * @param maxWidth - The maximum width of a puzzle, in characters (not
+     *                 counting the row terminator).
+     */
+    public PuzzleGenerator(long seed, int maxWidth) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.wordSeeds = this.random.split();
+        this.maxWidth = maxWidth;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Gets the seed for the word database's random choice of the next stem or
+     * candidate leaf requested.
+     *
+     * @return - The seed.
+     */
+    public long nextWordSeed() {
+        return this.wordSeeds.nextLong();
+    }
+
+    /**
+     * Gets the letters to request candidate leaves for: each distinct letter of
+     * the stem, repeated once per candidate wanted.
+     *
+     * @param stem                - The stem.
+     * @param candidatesPerLetter - The number of candidate leaves per letter.
+     * @return - The letters, in the order the stem first uses them.
+     */
+    public char[] getCandidateLetters(String stem, int candidatesPerLetter) {
+        LinkedHashSet<Character> distinctLetters = new LinkedHashSet<>();
+        for (int i = 0; i < stem.length(); i++) {
+            distinctLetters.add(Character.toLowerCase(stem.charAt(i)));
+        }
+
+        char[] letters = new char[distinctLetters.size() * candidatesPerLetter];
+        int count = 0;
+        for (char letter : distinctLetters) {
+            for (int i = 0; i < candidatesPerLetter; i++) {
+                letters[count++] = letter;
+            }
+        }
+        return letters;
+    }
+
+    /**
+     * Assigns leaves from the candidates to distinct rows of the stem.
+     *
+     * @param stem       - The stem.
+     * @param candidates - The candidate leaves; empty strings, duplicates and
+     *                   the stem itself are ignored.
+     * @param leafCount  - The number of leaves to place.
+     * @param deadline   - The time (ms since epoch) at which to give up.
+     * @return - The layout, or null if the candidates can't fill enough rows
+     *         (or the deadline passed).
+     */
+    public Layout layout(String stem, String[] candidates, int leafCount, long deadline) {
+        this.stem = stem.toLowerCase();
+        this.deadline = deadline;
+
+        LinkedHashSet<String> distinctCandidates = new LinkedHashSet<>();
+        for (String candidate : candidates) {
+            String leaf = candidate.toLowerCase();
+            if (!leaf.isEmpty() && !leaf.equals(this.stem)) {
+                distinctCandidates.add(leaf);
+            }
+        }
+        this.candidates = new ArrayList<>(distinctCandidates);
+        shuffle(this.candidates);
+
+        int rowCount = this.stem.length();
+        this.left = 0;
+        this.right = 0;
+        this.connects = new boolean[rowCount][this.candidates.size()];
+        for (int row = 0; row < rowCount; row++) {
+            for (int leaf = 0; leaf < this.candidates.size(); leaf++) {
+                this.connects[row][leaf] = countFittingOccurrences(this.candidates.get(leaf),
+                        this.stem.charAt(row)) > 0;
+            }
+        }
+
+        this.rowLeaves = new int[rowCount];
+        this.rowConnections = new int[rowCount];
+        this.decided = new boolean[rowCount];
+        this.used = new boolean[this.candidates.size()];
+        if (leafCount > rowCount) {
+            return null;
+        }
+        this.firstRow = this.random.nextInt(rowCount);
+        if (!search(leafCount)) {
+            return null;
+        }
+        return toLayout(leafCount);
+    }
+
+    /**
+     * Fills the most constrained undecided row with each usable candidate in
+     * turn, or leaves it empty, until the remaining leaves are placed.
+     * Candidates are only usable if they fit within the width left by the
+     * leaves already placed.
+     */
+    private boolean search(int remaining) {
+        if (remaining == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() >= this.deadline) {
+            return false;
+        }
+
+        // Find the most constrained row, and the number of rows still usable
+        int bestRow = -1;
+        int bestOptions = Integer.MAX_VALUE;
+        int usableRows = 0;
+        for (int i = 0; i < this.decided.length; i++) {
+            // Start from a random row, so that ties don't favour the top rows
+            int row = (this.firstRow + i) % this.decided.length;
+            if (this.decided[row]) {
+                continue;
+            }
+            int options = countOptions(row);
+            if (options > 0) {
+                usableRows++;
+                if (options < bestOptions) {
+                    bestRow = row;
+                    bestOptions = options;
+                }
+            }
+        }
+        if (usableRows < remaining) {
+            return false;
+        }
+
+        this.decided[bestRow] = true;
+        char letter = this.stem.charAt(bestRow);
+        int savedLeft = this.left;
+        int savedRight = this.right;
+        for (int leaf = 0; leaf < this.candidates.size(); leaf++) {
+            if (this.used[leaf] || !this.connects[bestRow][leaf]) {
+                continue;
+            }
+            String candidate = this.candidates.get(leaf);
+            int occurrences = countFittingOccurrences(candidate, letter);
+            if (occurrences == 0) {
+                continue;
+            }
+            this.used[leaf] = true;
+            this.rowLeaves[bestRow] = leaf;
+
+            // Start from a random occurrence; in the wide layout (or without a
+            // maximum width) the occurrence doesn't constrain the other leaves,
+            // so only that one is tried
+            int first = this.random.nextInt(occurrences);
+            int tries = Constants.TIGHT_PUZZLE_LAYOUT && this.maxWidth < Integer.MAX_VALUE ? occurrences : 1;
+            for (int i = 0; i < tries; i++) {
+                int connectingIndex = findFittingOccurrence(candidate, letter, (first + i) % occurrences);
+                this.rowConnections[bestRow] = connectingIndex;
+                this.left = Math.max(savedLeft, connectingIndex);
+                this.right = Math.max(savedRight, candidate.length() - 1 - connectingIndex);
+                if (search(remaining - 1)) {
+                    return true;
+                }
+                this.left = savedLeft;
+                this.right = savedRight;
+            }
+            this.used[leaf] = false;
+        }
+
+        // Leave the row empty
+        this.rowLeaves[bestRow] = -1;
+        if (search(remaining)) {
+            return true;
+        }
+        this.decided[bestRow] = false;
+        return false;
+    }
+
+    private int countOptions(int row) {
+        int options = 0;
+        char letter = this.stem.charAt(row);
+        for (int leaf = 0; leaf < this.candidates.size(); leaf++) {
+            if (!this.used[leaf] && this.connects[row][leaf]
+                    && countFittingOccurrences(this.candidates.get(leaf), letter) > 0) {
+                options++;
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Collects the filled rows into a layout, with the occurrence of the
+     * stem's letter each leaf was placed through.
+     */
+    private Layout toLayout(int leafCount) {
+        String[] words = new String[leafCount + 1];
+        int[] rows = new int[leafCount];
+        int[] connectingIndices = new int[leafCount];
+        words[0] = this.stem;
+
+        int count = 0;
+        for (int row = 0; row < this.decided.length; row++) {
+            if (!this.decided[row] || this.rowLeaves[row] < 0) {
+                continue;
+            }
+            words[count + 1] = this.candidates.get(this.rowLeaves[row]);
+            rows[count] = row;
+            connectingIndices[count] = this.rowConnections[row];
+            count++;
+        }
+        return new Layout(words, rows, connectingIndices);
+    }
+
+    /**
+     * Counts the occurrences of a letter in a leaf that the leaf could connect
+     * through while keeping the puzzle within the maximum width.
+     */
+    private int countFittingOccurrences(String leaf, char letter) {
+        int occurrences = 0;
+        for (int i = leaf.indexOf(letter); i >= 0; i = leaf.indexOf(letter, i + 1)) {
+            if (fits(leaf, i)) {
+                occurrences++;
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * Finds the nth occurrence of a letter in a leaf that the leaf could
+     * connect through while keeping the puzzle within the maximum width.
+     */
+    private int findFittingOccurrence(String leaf, char letter, int n) {
+        int connectingIndex = -1;
+        for (int i = 0; i <= n; i++) {
+            do {
+                connectingIndex = leaf.indexOf(letter, connectingIndex + 1);
+            } while (!fits(leaf, connectingIndex));
+        }
+        return connectingIndex;
+    }
+
+    private boolean fits(String leaf, int connectingIndex) {
+        if (!Constants.TIGHT_PUZZLE_LAYOUT) {
+            // Excluding the row terminator
+            return PuzzleTemplate.wideColumns(leaf.length()) - 1 <= this.maxWidth;
+        }
+        return (long) Math.max(this.left, connectingIndex) + 1
+                + Math.max(this.right, leaf.length() - 1 - connectingIndex) <= this.maxWidth;
+    }
+
+    private void shuffle(ArrayList<String> list) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            list.set(j, list.set(i, list.get(j)));
+        }
+    }
+}
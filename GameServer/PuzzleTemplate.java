@@ -0,0 +1,472 @@
+package GameServer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The immutable part of a puzzle: its words, their layout, the solution grid,
+ * and the indexes used to apply guesses. A template is never changed once it
+ * is constructed, so it can be shared by any number of players, each of whom
+ * keeps only their own reveal mask (see Puzzle).
+ *
+ * Templates that many players are expected to play (e.g. the daily puzzle)
+ * are shared: puzzles read from saved games with the same layout reuse the
+ * shared template instead of laying it out again.
+ */
+class PuzzleTemplate {
+    // Shared templates, by layout
+    private static final ConcurrentHashMap<String, PuzzleTemplate> sharedTemplates = new ConcurrentHashMap<>();
+
+    // The stem followed by the leaves
+    private final String[] words;
+
+    // The leaves, the row each is placed in, and the index of the character
+    // through which each connects to the stem
+    private String[] leaves;
+    private int[] leafRows;
+    private int[] connectingIndices;
+
+    // Puzzle height and width (i.e., rows/columns, respectively)
+    private final int rows;
+    private final int columns;
+    private final int stemColumn;
+
+    /*
+     * The solved puzzle, as a 2-D char "grid". Cell (i, j) is identified by
+     * the bit i * columns + j of a player's mask.
+     */
+    private final char[][] solutionGrid;
+    private int wordCells;
+
+    /*
+     * Indexes built from the solution grid, so that a guess only visits the
+     * cells it reveals. Cells are identified by their bit in the mask. Each
+     * leaf maps to its first cell, the rest of the leaf following it in the
+     * same row; the stem is matched separately.
+     */
+    private HashMap<Character, int[]> letterCells;
+    private HashMap<String, Integer> leafCells;
+
+    private volatile boolean shared;
+
+    /**
+     * Constructs a template from a layout of the given words.
+     *
+     * @param words             - The stem followed by the leaves.
+     * @param rows              - The row of the stem each leaf is placed in.
+     * @param connectingIndices - The index of the character through which
+     *                          each leaf connects to the stem.
+     */
+    public PuzzleTemplate(String[] words, int[] rows, int[] connectingIndices) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = words[i].toLowerCase(); // For case-insensitive search
+        }
+        this.words = words;
+        this.rows = words[0].length();
+
+        if (Constants.TIGHT_PUZZLE_LAYOUT) {
+            /*
+             * Tight bounds: the stem is placed just right of the leaf reaching
+             * furthest left of it, and the row terminator just right of the
+             * leaf reaching furthest right of it
+             */
+            int left = 0;
+            int right = 0;
+            for (int i = 1; i < words.length; i++) {
+                left = Math.max(left, connectingIndices[i - 1]);
+                right = Math.max(right, words[i].length() - 1 - connectingIndices[i - 1]);
+            }
+            this.columns = left + 1 + right + 1;
+            this.stemColumn = left;
+        } else {
+            this.columns = wideColumns(findLongestLeafLength(words));
+            this.stemColumn = (this.columns - 2) / 2;
+        }
+
+        this.solutionGrid = createDefaultGrid();
+        populateSolutionGrid(rows, connectingIndices);
+        this.leaves = Arrays.copyOfRange(words, 1, words.length);
+        this.leafRows = rows.clone();
+        this.connectingIndices = connectingIndices.clone();
+        buildIndexes();
+    }
+
+    /**
+     * Constructs a template from a solution grid saved by older versions,
+     * which always used the wide layout (the stem in the middle column).
+     *
+     * @param stem         - The stem of the puzzle.
+     * @param solutionGrid - The solution grid.
+     */
+    public PuzzleTemplate(String stem, char[][] solutionGrid) {
+        this.rows = solutionGrid.length;
+        this.columns = solutionGrid[0].length;
+        this.stemColumn = (this.columns - 2) / 2;
+        this.solutionGrid = solutionGrid;
+        buildIndexes();
+        findLeaves();
+
+        this.words = new String[this.leaves.length + 1];
+        this.words[0] = stem.toLowerCase();
+        System.arraycopy(this.leaves, 0, this.words, 1, this.leaves.length);
+    }
+
+    /**
+     * Gets the template for a layout: the shared template, if one has the
+     * same layout, or else a new one.
+     *
+     * @param words             - The stem followed by the leaves.
+     * @param rows              - The row of the stem each leaf is placed in.
+     * @param connectingIndices - The index of the character through which
+     *                          each leaf connects to the stem.
+     * @return - The template.
+     */
+    public static PuzzleTemplate of(String[] words, int[] rows, int[] connectingIndices) {
+        PuzzleTemplate template = sharedTemplates.get(layoutKey(words, rows, connectingIndices));
+        return template != null ? template : new PuzzleTemplate(words, rows, connectingIndices);
+    }
+
+    /**
+     * Reads the layout written by write, and gets its template.
+     *
+     * @param in - The stream to read from.
+     * @return - The template.
+     * @throws IOException - If the layout could not be read.
+     */
+    public static PuzzleTemplate read(DataInputStream in) throws IOException {
+        String[] words = new String[in.readUnsignedByte()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readUTF();
+        }
+        int[] rows = new int[words.length - 1];
+        int[] connectingIndices = new int[words.length - 1];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = in.readUnsignedByte();
+            connectingIndices[i] = in.readUnsignedByte();
+        }
+        return of(words, rows, connectingIndices);
+    }
+
+    /**
+     * Writes the layout compactly: the words, and the row and connecting
+     * index of each leaf. The grid is not written, as it is laid out again
+     * from the words when the template is read.
+     *
+     * @param out - The stream to write to.
+     * @throws IOException - If the layout could not be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(this.words.length);
+        for (String word : this.words) {
+            out.writeUTF(word);
+        }
+        for (int i = 0; i < this.leaves.length; i++) {
+            out.writeByte(this.leafRows[i]);
+            out.writeByte(this.connectingIndices[i]);
+        }
+    }
+
+    /**
+     * Shares the template, so that puzzles read with the same layout use it.
+     *
+     * @return - The shared template with this layout (this one, unless another
+     *         was shared first).
+     */
+    public PuzzleTemplate share() {
+        PuzzleTemplate template = sharedTemplates.putIfAbsent(
+                layoutKey(this.words, this.leafRows, this.connectingIndices), this);
+        if (template == null) {
+            this.shared = true;
+            return this;
+        }
+        return template;
+    }
+
+    /**
+     * Stops sharing the template. Puzzles already using it keep it.
+     */
+    public void unshare() {
+        sharedTemplates.remove(layoutKey(this.words, this.leafRows, this.connectingIndices), this);
+        this.shared = false;
+    }
+
+    /**
+     * Checks whether the template is shared, in which case its memory is not
+     * attributed to any one player.
+     *
+     * @return - True if the template is shared.
+     */
+    public boolean isShared() {
+        return this.shared;
+    }
+
+    private static String layoutKey(String[] words, int[] rows, int[] connectingIndices) {
+        return String.join(",", words).toLowerCase() + ";" + Arrays.toString(rows) + ";"
+                + Arrays.toString(connectingIndices);
+    }
+
+    /**
+     * Gets the stem followed by the leaves. The array is shared, and must not
+     * be changed.
+     *
+     * @return - The puzzle's words.
+     */
+    public String[] getWords() {
+        return this.words;
+    }
+
+    public String getStem() {
+        return this.words[0];
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public int getColumns() {
+        return this.columns;
+    }
+
+    public int getStemColumn() {
+        return this.stemColumn;
+    }
+
+    /**
+     * Gets the number of word characters, i.e. the cells a player must reveal.
+     *
+     * @return - The number of word characters.
+     */
+    public int getWordCellCount() {
+        return this.wordCells;
+    }
+
+    public char getSolutionCell(int row, int column) {
+        return this.solutionGrid[row][column];
+    }
+
+    public boolean isWordCell(int row, int column) {
+        char c = this.solutionGrid[row][column];
+        return c != '.' && c != '+';
+    }
+
+    /**
+     * Gets the cells of a letter.
+     *
+     * @param letter - The (lower case) letter.
+     * @return - The mask bit of each cell, or null if the letter is not used.
+     */
+    public int[] getLetterCells(char letter) {
+        return this.letterCells.get(letter);
+    }
+
+    /**
+     * Gets the first cell of a leaf.
+     *
+     * @param leaf - The (lower case) leaf.
+     * @return - The mask bit of the cell, or null if there is no such leaf.
+     */
+    public Integer getLeafCell(String leaf) {
+        return this.leafCells.get(leaf);
+    }
+
+    /**
+     * Finds the length of the longest word (leaf) in the given array of words.
+     *
+     * @param words - An array of words.
+     * @return - The length of the longest word in the array.
+     */
+    private static int findLongestLeafLength(String[] words) {
+        int length = 0;
+        for (int i = 1; i < words.length; i++)
+            if (words[i].length() > length)
+                length = words[i].length();
+        return length;
+    }
+
+    /**
+     * Gets the number of columns of the wide layout (including the row
+     * terminator): twice the longest leaf's length, plus one, and plus one more
+     * if the length is even, so the stem is in the middle.
+     *
+     * @param longestLeafLength - The length of the longest leaf.
+     * @return - The number of columns.
+     */
+    static int wideColumns(int longestLeafLength) {
+        int columns = longestLeafLength * 2 + 1;
+        if (longestLeafLength % 2 == 0) {
+            columns++;
+        }
+        return columns;
+    }
+
+    /**
+     * Initializes a grid where each row contains a series of '*' terminated with a
+     * '+'.
+     *
+     * @return - The initialized grid.
+     */
+    private char[][] createDefaultGrid() {
+        char[][] grid = new char[this.rows][this.columns];
+        for (int i = 0; i < this.rows; i++) {
+            for (int j = 0; j < this.columns; j++)
+                if (j == this.columns - 1) {
+                    grid[i][j] = '+';
+                } else {
+                    grid[i][j] = '.';
+                }
+        }
+        return grid;
+    }
+
+    /**
+     * Populates the solution grid with the stem and leaves.
+     *
+     * @param rows              - The row of the stem each leaf is placed in.
+     * @param connectingIndices - The index of the character through which
+     *                          each leaf connects to the stem.
+     */
+    private void populateSolutionGrid(int[] rows, int[] connectingIndices) {
+        // Insert stem
+        char[] stemArray = this.words[0].toCharArray();
+        for (int i = 0; i < stemArray.length; i++) {
+            this.solutionGrid[i][this.stemColumn] = stemArray[i];
+        }
+
+        for (int i = 1; i < this.words.length; i++) {
+            insertLeaf(this.words[i], rows[i - 1], connectingIndices[i - 1]);
+        }
+    }
+
+    /**
+     * Inserts a leaf at a specified row, connecting it to the stem through
+     * the specified character.
+     *
+     * @param leaf            The leaf word to insert.
+     * @param row             The row in the solution grid where the leaf will
+     *                        be inserted.
+     * @param connectingIndex The index of the leaf character that matches the
+     *                        stem.
+     */
+    private void insertLeaf(String leaf, int row, int connectingIndex) {
+        char[] leafArray = leaf.toCharArray();
+
+        /*
+         * (Horizontal) offset is x indices left of the Stem (central)
+         * column, where x is the number of characters preceding the
+         * connecting character
+         */
+        int offset = this.stemColumn - connectingIndex;
+        for (int i = 0; i < leafArray.length; i++) {
+            this.solutionGrid[row][i + offset] = leafArray[i];
+        }
+    }
+
+    /**
+     * Indexes the cells of each letter, and the first cell of each leaf (a
+     * row with 2 or more word characters).
+     */
+    private void buildIndexes() {
+        HashMap<Character, Integer> letterCounts = new HashMap<>();
+        for (int i = 0; i < this.rows; i++) {
+            for (int j = 0; j < this.columns; j++) {
+                if (isWordCell(i, j)) {
+                    letterCounts.merge(this.solutionGrid[i][j], 1, Integer::sum);
+                    this.wordCells++;
+                }
+            }
+        }
+
+        this.letterCells = new HashMap<>();
+        HashMap<Character, Integer> filled = new HashMap<>();
+        this.leafCells = new HashMap<>();
+        for (int i = 0; i < this.rows; i++) {
+            int first = -1;
+            int length = 0;
+            for (int j = 0; j < this.columns; j++) {
+                if (isWordCell(i, j)) {
+                    char letter = this.solutionGrid[i][j];
+                    int[] cells = this.letterCells.computeIfAbsent(letter,
+                            key -> new int[letterCounts.get(key)]);
+                    cells[filled.merge(letter, 1, Integer::sum) - 1] = i * this.columns + j;
+                    if (first < 0) {
+                        first = j;
+                    }
+                    length++;
+                }
+            }
+            if (length >= 2) {
+                this.leafCells.putIfAbsent(new String(this.solutionGrid[i], first, length),
+                        i * this.columns + first);
+            }
+        }
+    }
+
+    /**
+     * Recovers the leaves of a puzzle read from its grids, along with the row
+     * and connecting index of each.
+     */
+    private void findLeaves() {
+        this.leaves = new String[this.rows];
+        this.leafRows = new int[this.rows];
+        this.connectingIndices = new int[this.rows];
+
+        int leaf = 0;
+        for (int i = 0; i < this.rows; i++) {
+            int first = -1;
+            int length = 0;
+            for (int j = 0; j < this.columns; j++) {
+                if (isWordCell(i, j)) {
+                    first = first < 0 ? j : first;
+                    length++;
+                }
+            }
+            if (length >= 2) {
+                this.leaves[leaf] = new String(this.solutionGrid[i], first, length);
+                this.leafRows[leaf] = i;
+                this.connectingIndices[leaf] = this.stemColumn - first;
+                leaf++;
+            }
+        }
+        this.leaves = Arrays.copyOf(this.leaves, leaf);
+        this.leafRows = Arrays.copyOf(this.leafRows, leaf);
+        this.connectingIndices = Arrays.copyOf(this.connectingIndices, leaf);
+    }
+
+    /**
+     * Estimates the heap retained by the template: its words, solution grid
+     * and indexes.
+     *
+     * @return - The estimate, in bytes.
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 64 + SessionMemory.stringArrayBytes(this.words)
+                + SessionMemory.gridBytes(this.solutionGrid);
+        bytes += 16 + 4L * this.leaves.length + 2 * (16 + 4L * this.leaves.length);
+        // Map tables, plus an entry (and key/value) per letter and leaf
+        bytes += 2 * 112 + 56L * (this.letterCells.size() + this.leafCells.size());
+        for (int[] cells : this.letterCells.values()) {
+            bytes += 16 + 4L * cells.length;
+        }
+        for (String leaf : this.leafCells.keySet()) {
+            bytes += SessionMemory.stringBytes(leaf);
+        }
+        return bytes;
+    }
+
+    /**
+     * Exports the solved puzzle as a string.
+     *
+     * @return - The string representation of the solution grid.
+     */
+    public String getSolutionString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < this.rows; i++) {
+            stringBuilder.append(this.solutionGrid[i]).append("\n");
+        }
+        return stringBuilder.toString();
+    }
+}
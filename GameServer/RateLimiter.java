@@ -0,0 +1,125 @@
+package GameServer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket rate limits for one kind of client request, applied per
+ * username and across the whole server.
+ *
+ * Each bucket holds up to a minute's worth of tokens, and refills
+ * continuously at its per-minute rate; a request takes one token. The username
+ * bucket is checked first, so a client that exceeds its own limit never uses
+ * up the server-wide tokens shared by every other client, and its token is
+ * returned if the server-wide limit rejects the request. Username buckets
+ * outlive sessions, so reconnecting does not reset a user's limit; as a user
+ * is only logged in once at a time, no separate per-session limit is needed.
+ */
+class RateLimiter {
+    // Number of username buckets kept before idle (full) buckets are dropped
+    private static final int USER_BUCKET_LIMIT = 10000;
+
+    private final String kind;
+    private final String description;
+    private final int userPerMinute;
+    private final Bucket global;
+    private final ConcurrentHashMap<String, Bucket> userBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * A token bucket, refilled lazily when tokens are taken.
+     */
+    private static class Bucket {
+        private final double capacity;
+        private final double tokensPerMs;
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(int perMinute) {
+            this.capacity = perMinute;
+            this.tokensPerMs = perMinute / 60000.0;
+            this.tokens = perMinute;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * Takes a token if one is available.
+         *
+         * @return - 0 if a token was taken, or else the time (ms) until one
+         *         will be.
+         */
+        private synchronized long tryAcquire() {
+            refill();
+            if (this.tokens >= 1) {
+                this.tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - this.tokens) / this.tokensPerMs);
+        }
+
+        /**
+         * Returns a token taken by a request that was rejected elsewhere.
+         */
+        private synchronized void refund() {
+            refill();
+            this.tokens = Math.min(this.capacity, this.tokens + 1);
+        }
+
+        private synchronized boolean isFull() {
+            refill();
+            return this.tokens >= this.capacity;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerMs);
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * Constructs the rate limits for a kind of request.
+     *
+     * @param kind            - The kind of request, for metrics.
+     * @param description     - The kind of request, as shown to clients.
+     * @param userPerMinute   - The requests allowed per minute per username.
+     * @param globalPerMinute - The requests allowed per minute by the server.
+     */
+    public RateLimiter(String kind, String description, int userPerMinute, int globalPerMinute) {
+        this.kind = kind;
+        this.description = description;
+        this.userPerMinute = userPerMinute;
+        this.global = new Bucket(globalPerMinute);
+    }
+
+    /**
+     * Takes a token for a request from the user's and the server's buckets.
+     * Either both tokens are taken, or neither is.
+     *
+     * @param username - The client's username.
+     * @throws Exceptions.RateLimitException - If either of the limits is
+     *                                       exceeded.
+     */
+    public void acquire(String username) throws Exceptions.RateLimitException {
+        if (this.userBuckets.size() > USER_BUCKET_LIMIT) {
+            this.userBuckets.values().removeIf(Bucket::isFull);
+        }
+        Bucket user = this.userBuckets.computeIfAbsent(username, u -> new Bucket(this.userPerMinute));
+        check(user, "user");
+        try {
+            check(this.global, "global");
+        } catch (Exceptions.RateLimitException e) {
+            user.refund();
+            throw e;
+        }
+    }
+
+    private void check(Bucket bucket, String scope) throws Exceptions.RateLimitException {
+        long wait = bucket.tryAcquire();
+        if (wait > 0) {
+            Metrics.counter("requests_rate_limited_total{kind=\"" + this.kind + "\",scope=\"" + scope + "\"}")
+                    .increment();
+            long seconds = Math.max(1, (wait + 999) / 1000);
+            throw new Exceptions().new RateLimitException(String.format(Constants.RATE_LIMITED,
+                    this.description, seconds));
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package GameServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Assembles a response to a client in a reusable buffer, and sends the whole
+ * response with a single write when flushed. A response should be flushed
+ * once it is complete, i.e. before waiting for the client's next input.
+ *
+ * The static menus and prompts are encoded once, and copied into the buffer
+ * as bytes.
+ *
+ * Responses are sent in one of 2 modes:
+ *
+ * 1. Text (default) - lines of text, with each message terminated by the
+ * MESSAGE_END_DELIM line. Suitable for telnet.
+ * 2. Binary - a sequence of frames, each consisting of a 1 byte message type,
+ * a 4 byte (big-endian) payload length, and the UTF-8 encoded payload. A
+ * MENU_PROMPT frame ends each message. Text written outside of an explicit
+ * frame is sent as a RESULT frame.
+ *
+ * Messages may also be sent to the client from other threads (e.g. updates to
+ * a shared puzzle) with send, which never interleaves with a flush.
+ */
+class ResponseWriter {
+    // Binary mode message types
+    public static final byte MENU_PROMPT = 1;
+    public static final byte PUZZLE_STATE = 2;
+    public static final byte RESULT = 3;
+    public static final byte ERROR = 4;
+    // Changed puzzle cells: 3 unsigned shorts (row, column, character) per cell
+    public static final byte PUZZLE_DELTA = 5;
+
+    public static final byte[] WELCOME_PROMPT = encode(
+            "\nWelcome to the crossword puzzle game. Please enter your username.");
+    public static final byte[] USER_MENU = encode(Constants.USER_MENU);
+    public static final byte[] GAME_MENU = encode(Constants.GAME_MENU + "\n");
+    public static final byte[] ROOM_MENU = encode(Constants.ROOM_MENU + "\n");
+    private static final byte[] MESSAGE_END = encode(Constants.MESSAGE_END_DELIM + "\n");
+
+    // Frame header: message type followed by payload length
+    private static final int FRAME_HEADER_LENGTH = 5;
+
+    private static final int INITIAL_CAPACITY = 2048;
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int count;
+
+    private boolean binary;
+
+    // Position of the current frame's header in the buffer, or -1 if no frame
+    // is open (always -1 in text mode)
+    private int frameStart = -1;
+
+    /**
+     * Constructs a response writer for a client connection.
+     *
+     * @param out - The connection's output stream.
+     */
+    public ResponseWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    private static byte[] encode(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Switches the connection to binary mode. Applies from the next write.
+     */
+    public void setBinary() {
+        this.binary = true;
+    }
+
+    /**
+     * Checks whether the connection is in binary mode.
+     *
+     * @return - True if responses are sent as binary frames.
+     */
+    public boolean isBinary() {
+        return this.binary;
+    }
+
+    /**
+     * Gets the size of the response buffer.
+     *
+     * @return - The buffer's capacity, in bytes.
+     */
+    public int getCapacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Encodes a complete frame, to be sent with send.
+     *
+     * @param type    - The message type of the frame.
+     * @param payload - The payload of the frame.
+     * @return - The encoded frame.
+     */
+    public static byte[] encodeFrame(byte type, byte[] payload) {
+        byte[] frame = new byte[FRAME_HEADER_LENGTH + payload.length];
+        frame[0] = type;
+        frame[1] = (byte) (payload.length >>> 24);
+        frame[2] = (byte) (payload.length >>> 16);
+        frame[3] = (byte) (payload.length >>> 8);
+        frame[4] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, FRAME_HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    /**
+     * Starts a frame of the given message type, ending any open frame. Has no
+     * effect in text mode.
+     *
+     * @param type - The message type of the frame.
+     */
+    public void beginFrame(byte type) {
+        if (this.binary) {
+            endFrame();
+            ensureCapacity(FRAME_HEADER_LENGTH);
+            this.frameStart = this.count;
+            this.buffer[this.count] = type;
+            this.count += FRAME_HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Ends the open frame, if any, by filling in its payload length.
+     */
+    public void endFrame() {
+        if (this.frameStart >= 0) {
+            int length = this.count - this.frameStart - FRAME_HEADER_LENGTH;
+            this.buffer[this.frameStart + 1] = (byte) (length >>> 24);
+            this.buffer[this.frameStart + 2] = (byte) (length >>> 16);
+            this.buffer[this.frameStart + 3] = (byte) (length >>> 8);
+            this.buffer[this.frameStart + 4] = (byte) length;
+            this.frameStart = -1;
+        }
+    }
+
+    /**
+     * Ends the current message, i.e. a prompt for the client's input. In text
+     * mode, the end of message delimiter is appended.
+     */
+    public void endMessage() {
+        if (this.binary) {
+            endFrame();
+        } else {
+            write(MESSAGE_END);
+        }
+    }
+
+    /**
+     * Appends a single line frame of the given message type (or a line of text
+     * in text mode).
+     *
+     * @param type   - The message type of the frame.
+     * @param string - The line to append.
+     */
+    public void println(byte type, String string) {
+        beginFrame(type);
+        println(string);
+        endFrame();
+    }
+
+    /**
+     * Appends pre-encoded bytes to the response.
+     *
+     * @param bytes - The bytes to append.
+     */
+    public void write(byte[] bytes) {
+        ensureFrame();
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.count, bytes.length);
+        this.count += bytes.length;
+    }
+
+    /**
+     * Appends a string to the response. ASCII characters are copied directly
+     * into the buffer; any other text is encoded as UTF-8.
+     *
+     * @param string - The string to append.
+     */
+    public void print(String string) {
+        int length = string.length();
+        ensureFrame();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                write(encode(string.substring(i)));
+                return;
+            }
+            this.buffer[this.count++] = (byte) c;
+        }
+    }
+
+    /**
+     * Appends an integer to the response in decimal.
+     *
+     * @param value - The integer to append.
+     */
+    public void print(int value) {
+        if (value < 0) {
+            print(String.valueOf(value));
+            return;
+        }
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        ensureFrame();
+        ensureCapacity(digits);
+        for (int i = this.count + digits - 1; i >= this.count; i--) {
+            this.buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        this.count += digits;
+    }
+
+    /**
+     * Appends a string followed by a newline to the response.
+     *
+     * @param string - The string to append.
+     */
+    public void println(String string) {
+        print(string);
+        println();
+    }
+
+    /**
+     * Appends a newline to the response.
+     */
+    public void println() {
+        ensureFrame();
+        ensureCapacity(1);
+        this.buffer[this.count++] = '\n';
+    }
+
+    /**
+     * Sends the response assembled so far with a single write, and resets the
+     * buffer for the next response.
+     *
+     * @throws IOException - If the response could not be sent.
+     */
+    public void flush() throws IOException {
+        endFrame();
+        if (this.count > 0) {
+            try {
+                synchronized (this.out) {
+                    this.out.write(this.buffer, 0, this.count);
+                    this.out.flush();
+                }
+            } finally {
+                this.count = 0;
+            }
+        }
+    }
+
+    /**
+     * Immediately sends a pre-encoded message, bypassing the buffer. May be
+     * called from any thread; the message is never interleaved with a
+     * response being flushed.
+     *
+     * @param message - The encoded message (frames, in binary mode).
+     * @throws IOException - If the message could not be sent.
+     */
+    public void send(byte[] message) throws IOException {
+        synchronized (this.out) {
+            this.out.write(message);
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Sends any remaining response and closes the connection's output stream.
+     *
+     * @throws IOException - If the response could not be sent or the stream
+     *                     could not be closed.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Opens a RESULT frame in binary mode if text is written outside of a frame.
+     */
+    private void ensureFrame() {
+        if (this.binary && this.frameStart < 0) {
+            beginFrame(RESULT);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (this.count + additional > this.buffer.length) {
+            byte[] grown = new byte[Math.max(this.buffer.length * 2, this.count + additional)];
+            System.arraycopy(this.buffer, 0, grown, 0, this.count);
+            this.buffer = grown;
+        }
+    }
+}
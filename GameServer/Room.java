@@ -0,0 +1,232 @@
+package GameServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A puzzle shared by several players, who take turns guessing as their input
+ * arrives.
+ *
+ * Guesses are applied one at a time. After each guess, only the cells it
+ * revealed are sent to the other members, rather than the whole puzzle, and
+ * the update is encoded once per protocol mode and shared by every member in
+ * that mode. Updates are written by a shared executor, through a queue per
+ * member, so a slow member never holds up the guesser or the other members,
+ * and each member receives updates in order.
+ */
+class Room {
+    private final String id;
+    private final String[] words;
+    private final Puzzle puzzle;
+    private final Executor broadcaster;
+    private final CopyOnWriteArrayList<Member> members = new CopyOnWriteArrayList<>();
+
+    private int attempts;
+    private boolean over;
+    private String solvedBy;
+
+    /**
+     * A player in the room, and the updates waiting to be sent to them.
+     */
+    class Member {
+        private final String username;
+        private final ResponseWriter out;
+        private final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Member(String username, ResponseWriter out) {
+            this.username = username;
+            this.out = out;
+        }
+
+        public String getUsername() {
+            return this.username;
+        }
+
+        private void enqueue(byte[] message) {
+            this.pending.add(message);
+            if (this.sending.compareAndSet(false, true)) {
+                broadcaster.execute(this::sendPending);
+            }
+        }
+
+        /**
+         * Sends queued updates until the queue is empty. Only one task sends
+         * for a member at a time, which keeps the updates in order.
+         */
+        private void sendPending() {
+            do {
+                byte[] message;
+                while ((message = this.pending.poll()) != null) {
+                    try {
+                        this.out.send(message);
+                    } catch (IOException e) {
+                        // The member's own session notices the broken connection
+                        this.pending.clear();
+                    }
+                }
+                this.sending.set(false);
+            } while (!this.pending.isEmpty() && this.sending.compareAndSet(false, true));
+        }
+    }
+
+    /**
+     * Constructs a room for a new puzzle.
+     *
+     * @param id          - The ID players join the room with.
+     * @param words       - The puzzle's words.
+     * @param puzzle      - The puzzle.
+     * @param attempts    - The number of attempts shared by the members.
+     * @param broadcaster - The executor sending updates to the members.
+     */
+    public Room(String id, String[] words, Puzzle puzzle, int attempts, Executor broadcaster) {
+        this.id = id;
+        this.words = words;
+        this.puzzle = puzzle;
+        this.attempts = attempts;
+        this.broadcaster = broadcaster;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public String[] getWords() {
+        return this.words;
+    }
+
+    public int getMemberCount() {
+        return this.members.size();
+    }
+
+    public synchronized void writePuzzle(ResponseWriter out) {
+        this.puzzle.writePuzzle(out);
+    }
+
+    public synchronized int getAttempts() {
+        return this.attempts;
+    }
+
+    public synchronized boolean isOver() {
+        return this.over;
+    }
+
+    /**
+     * Gets the member whose guess solved the puzzle.
+     *
+     * @return - The member's username, or null if the puzzle is not solved.
+     */
+    public synchronized String getSolvedBy() {
+        return this.solvedBy;
+    }
+
+    /**
+     * Adds a player to the room.
+     *
+     * @param username - The player's username.
+     * @param out      - The player's connection.
+     * @return - The player's membership, used to guess and leave.
+     */
+    public Member join(String username, ResponseWriter out) {
+        Member member = new Member(username, out);
+        this.members.add(member);
+        return member;
+    }
+
+    public void leave(Member member) {
+        this.members.remove(member);
+    }
+
+    /**
+     * Applies a member's guess to the shared puzzle, and sends the cells it
+     * revealed to the other members.
+     *
+     * @param guesser - The member guessing.
+     * @param guess   - The letter or word guessed.
+     * @return - True if the guess revealed part of the puzzle.
+     * @throws IOException - If the room's game is already over.
+     */
+    public boolean guess(Member guesser, String guess) throws IOException {
+        byte[] textUpdate;
+        byte[] binaryUpdate;
+        boolean successful;
+
+        synchronized (this) {
+            if (this.over) {
+                throw new IOException(Constants.ROOM_GAME_OVER);
+            }
+            long[] before = this.puzzle.copyRevealedMask();
+            successful = this.puzzle.updatePuzzleGrid(guess);
+            this.attempts--;
+            int[] cells = this.puzzle.getChangedCells(before);
+
+            StringBuilder stringBuilder = new StringBuilder("\n[Room ").append(this.id)
+                    .append("] ").append(guesser.getUsername()).append(" guessed '")
+                    .append(guess).append("': ").append(cells.length / 2)
+                    .append(" cell(s) revealed.");
+            if (this.puzzle.checkPuzzleSolved()) {
+                this.over = true;
+                this.solvedBy = guesser.getUsername();
+                stringBuilder.append("\n").append(this.solvedBy).append(" solved the puzzle!");
+            } else if (this.attempts == 0) {
+                this.over = true;
+                stringBuilder.append("\nNo attempts remaining. The puzzle was not solved.");
+            }
+            String summary = stringBuilder.append("\n").toString();
+
+            // Encode the update once for each mode
+            textUpdate = summary.getBytes(StandardCharsets.UTF_8);
+            binaryUpdate = encodeBinaryUpdate(textUpdate, cells);
+        }
+
+        for (Member member : this.members) {
+            if (member != guesser) {
+                member.enqueue(member.out.isBinary() ? binaryUpdate : textUpdate);
+            }
+        }
+        return successful;
+    }
+
+    /**
+     * Encodes an update as a RESULT frame with the summary, followed by a
+     * PUZZLE_DELTA frame with the (row, column, character) of each revealed
+     * cell, each as an unsigned short. A puzzle too large for its coordinates
+     * to fit is sent whole, as a PUZZLE_STATE frame, instead.
+     */
+    private byte[] encodeBinaryUpdate(byte[] summary, int[] cells) {
+        byte[] result = ResponseWriter.encodeFrame(ResponseWriter.RESULT, summary);
+        if (cells.length == 0) {
+            return result;
+        }
+
+        byte[] deltaFrame;
+        PuzzleTemplate template = this.puzzle.getTemplate();
+        if (template.getRows() > 0xFFFF || template.getColumns() > 0xFFFF) {
+            deltaFrame = ResponseWriter.encodeFrame(ResponseWriter.PUZZLE_STATE,
+                    ("\n" + this.puzzle.getPuzzleString()).getBytes(StandardCharsets.UTF_8));
+        } else {
+            byte[] delta = new byte[cells.length / 2 * 6];
+            for (int i = 0, j = 0; i < cells.length; i += 2) {
+                j = putShort(delta, j, cells[i]);
+                j = putShort(delta, j, cells[i + 1]);
+                j = putShort(delta, j, this.puzzle.getPuzzleCell(cells[i], cells[i + 1]));
+            }
+            deltaFrame = ResponseWriter.encodeFrame(ResponseWriter.PUZZLE_DELTA, delta);
+        }
+
+        byte[] update = new byte[result.length + deltaFrame.length];
+        System.arraycopy(result, 0, update, 0, result.length);
+        System.arraycopy(deltaFrame, 0, update, result.length, deltaFrame.length);
+        return update;
+    }
+
+    private static int putShort(byte[] buffer, int index, int value) {
+        buffer[index] = (byte) (value >>> 8);
+        buffer[index + 1] = (byte) value;
+        return index + 2;
+    }
+}
@@ -0,0 +1,249 @@
+package GameServer;
+
+import UserAccountServer.UserData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for saving user data to the user account microservice.
+ *
+ * Saving a user only marks their data as dirty; repeated saves for the same
+ * user are merged so that only the most recent snapshot is sent. Guesses may
+ * instead be queued as small events, which are appended to the user's event
+ * log rather than rewriting the snapshot. Dirty data is flushed in the
+ * background in batches (one connection per batch), so no save is ever older
+ * than the flush interval unless the account microservice is unreachable. A
+ * user's data may also be flushed immediately, e.g. on logout.
+ */
+class SaveQueue {
+    // Username -> unsent data, in order of first save
+    private final Map<String, Pending> dirty = new LinkedHashMap<>();
+
+    // Held while sending to the account microservice, so that older data for
+    // a user can never overwrite newer data
+    private final Object sendLock = new Object();
+
+    private final AccountService accountService;
+    private final long flushInterval;
+    private final int batchLimit;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Unsent data for a single user: an optional snapshot, followed by events
+     * that occurred after it.
+     */
+    private static class Pending {
+        private String snapshot;
+        private final StringBuilder events = new StringBuilder();
+
+        /**
+         * Merges newer pending data into this one. A newer snapshot supersedes
+         * everything queued before it.
+         */
+        private void merge(Pending newer) {
+            if (newer.snapshot != null) {
+                this.snapshot = newer.snapshot;
+                this.events.setLength(0);
+            }
+            this.events.append(newer.events);
+        }
+    }
+
+    /**
+     * Constructs a save queue.
+     *
+     * @param accountService - The user account microservice to save to.
+     * @param flushInterval  - The maximum time, in milliseconds, that a save
+     *                       may remain unsent.
+     * @param batchLimit     - The maximum number of users saved per batch.
+     */
+    public SaveQueue(AccountService accountService, long flushInterval, int batchLimit) {
+        this.accountService = accountService;
+        this.flushInterval = flushInterval;
+        this.batchLimit = batchLimit;
+    }
+
+    /**
+     * Starts flushing dirty user data in the background.
+     */
+    public void start() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "save-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushAll, this.flushInterval,
+                this.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flusher and flushes all remaining dirty user data.
+     */
+    public void shutdown() {
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+        }
+        flushAll();
+    }
+
+    /**
+     * Marks a user's data as dirty. The data is serialized immediately as a
+     * full snapshot, so later changes are only saved by marking the user dirty
+     * again. Any events queued for the user are discarded.
+     *
+     * @param userData - The user data to save.
+     */
+    public void markDirty(UserData userData) {
+        Pending pending = new Pending();
+        pending.snapshot = userData.getUserDataString();
+        enqueue(userData.getUsername(), pending);
+    }
+
+    /**
+     * Queues an event to be appended to a user's event log.
+     *
+     * @param username - The username whose event log to append to.
+     * @param event    - The event, terminated with a newline.
+     */
+    public void appendEvent(String username, String event) {
+        Pending pending = new Pending();
+        pending.events.append(event);
+        enqueue(username, pending);
+    }
+
+    private void enqueue(String username, Pending pending) {
+        synchronized (this.dirty) {
+            Pending existing = this.dirty.get(username);
+            if (existing == null) {
+                this.dirty.put(username, pending);
+            } else {
+                existing.merge(pending);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of users with unsent data.
+     *
+     * @return - The number of dirty users.
+     */
+    public int getPendingCount() {
+        synchronized (this.dirty) {
+            return this.dirty.size();
+        }
+    }
+
+    /**
+     * Immediately sends a user's dirty data, if any.
+     *
+     * @param username - The username whose data should be sent.
+     * @throws IOException - If the data could not be saved. The data remains
+     *                     queued and will be retried in the background.
+     */
+    public void flush(String username) throws IOException {
+        synchronized (this.sendLock) {
+            Pending pending;
+            synchronized (this.dirty) {
+                pending = this.dirty.remove(username);
+            }
+            if (pending != null) {
+                ArrayList<Map.Entry<String, Pending>> batch = new ArrayList<>();
+                batch.add(Map.entry(username, pending));
+                sendOrRequeue(batch);
+            }
+        }
+    }
+
+    /**
+     * Sends all dirty user data in batches of at most batchLimit users.
+     * Failures are reported and the affected data is kept for the next flush.
+     */
+    public void flushAll() {
+        synchronized (this.sendLock) {
+            ArrayList<Map.Entry<String, Pending>> batch;
+            while (!(batch = takeBatch()).isEmpty()) {
+                try {
+                    sendOrRequeue(batch);
+                } catch (IOException e) {
+                    System.out.println("Error: " + e.getMessage() + " (" + batch.size()
+                            + " user(s) will be retried)");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and returns up to batchLimit dirty entries.
+     */
+    private ArrayList<Map.Entry<String, Pending>> takeBatch() {
+        ArrayList<Map.Entry<String, Pending>> batch = new ArrayList<>();
+        synchronized (this.dirty) {
+            Iterator<Map.Entry<String, Pending>> iterator = this.dirty.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < this.batchLimit) {
+                Map.Entry<String, Pending> entry = iterator.next();
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                iterator.remove();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Sends a batch, returning its entries to the queue if it could not be
+     * saved. Data that was queued for the same users in the meantime is newer,
+     * and is merged after the returned entries.
+     */
+    private void sendOrRequeue(ArrayList<Map.Entry<String, Pending>> batch) throws IOException {
+        long start = System.nanoTime();
+        try {
+            sendBatch(batch);
+            Metrics.histogram("save_flush_ms").recordSince(start);
+        } catch (IOException e) {
+            Metrics.counter("save_flush_failures_total").increment();
+            synchronized (this.dirty) {
+                for (Map.Entry<String, Pending> entry : batch) {
+                    Pending newer = this.dirty.remove(entry.getKey());
+                    if (newer != null) {
+                        entry.getValue().merge(newer);
+                    }
+                    this.dirty.put(entry.getKey(), entry.getValue());
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Save a batch of users' data through the user account microservice. Each
+     * snapshot is sent as a "save" record, and each user's events as an
+     * "append" record.
+     */
+    private void sendBatch(ArrayList<Map.Entry<String, Pending>> batch) throws IOException {
+        ArrayList<AccountService.Record> records = new ArrayList<>();
+        for (Map.Entry<String, Pending> entry : batch) {
+            Pending pending = entry.getValue();
+            if (pending.snapshot != null) {
+                records.add(new AccountService.Record("save", entry.getKey(), pending.snapshot));
+            }
+            if (pending.events.length() > 0) {
+                records.add(new AccountService.Record("append", entry.getKey(),
+                        pending.events.toString()));
+            }
+        }
+
+        try {
+            if (this.accountService.saveBatch(records) != records.size()) {
+                throw new IOException(Constants.CANT_SAVE_GAME);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IOException(Constants.CANT_SAVE_GAME);
+        }
+    }
+}
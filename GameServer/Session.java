@@ -0,0 +1,141 @@
+package GameServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.Socket;
+
+/**
+ * Represents a client connection to the game server, and tracks when it
+ * should expire.
+ *
+ * A session expires when the client has not sent any input for the idle
+ * timeout, or when the absolute timeout has elapsed since it connected,
+ * whichever comes first. Expiry shuts down the connection's input, so the
+ * thread serving the client stops waiting for input and can save and log the
+ * user out through the normal path.
+ */
+class Session {
+    private final Socket socket;
+    private final long idleTimeout;
+    private final long absoluteDeadline;
+
+    private volatile long lastActivity;
+    private volatile boolean expired;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a session for a client connection, starting now.
+     *
+     * @param socket          - The client connection.
+     * @param idleTimeout     - The time (ms) the client may go without sending
+     *                        input.
+     * @param absoluteTimeout - The maximum duration (ms) of the session.
+     */
+    public Session(Socket socket, long idleTimeout, long absoluteTimeout) {
+        this.socket = socket;
+        this.idleTimeout = idleTimeout;
+        this.lastActivity = System.currentTimeMillis();
+        this.absoluteDeadline = this.lastActivity + absoluteTimeout;
+    }
+
+    /**
+     * Records input from the client, postponing the idle timeout.
+     */
+    public void touch() {
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the time of the client's last input.
+     *
+     * @return - The time, in milliseconds since the epoch.
+     */
+    public long getLastActivity() {
+        return this.lastActivity;
+    }
+
+    /**
+     * Gets the time at which the session expires, given its activity so far.
+     *
+     * @return - The expiry time, in milliseconds since the epoch.
+     */
+    public long getDeadline() {
+        return Math.min(this.lastActivity + this.idleTimeout, this.absoluteDeadline);
+    }
+
+    /**
+     * Expires the session by shutting down the connection's input.
+     */
+    public void expire() {
+        this.expired = true;
+        try {
+            this.socket.shutdownInput();
+        } catch (IOException e) {
+            // The connection is already closed
+        }
+    }
+
+    /**
+     * Checks whether the session has expired.
+     *
+     * @return - true if the session has expired, false otherwise.
+     */
+    public boolean isExpired() {
+        return this.expired;
+    }
+
+    /**
+     * Marks the session as closed, so that it no longer needs to be timed.
+     */
+    public void close() {
+        this.closed = true;
+    }
+
+    /**
+     * Checks whether the session has been closed.
+     *
+     * @return - true if the session has been closed, false otherwise.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Reads client input on behalf of a session, recording activity with each
+     * line read. Once the session has expired, reading throws a
+     * SessionTimeoutException instead of reporting the end of input.
+     *
+     * The session's game state may be unloaded while it waits for input, and
+     * is loaded again before the line read is returned; if it can't be, the
+     * session is ended with a GameReloadException.
+     */
+    public static class InputReader extends BufferedReader {
+        private final Session session;
+        private final SessionMemory memory;
+
+        public InputReader(Reader in, Session session, SessionMemory memory) {
+            super(in);
+            this.session = session;
+            this.memory = memory;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            this.memory.beginRead(this.session);
+            String line = super.readLine();
+            if (line == null && this.session.isExpired()) {
+                throw new Exceptions().new SessionTimeoutException(Constants.SESSION_TIMED_OUT);
+            }
+            this.session.touch();
+            try {
+                this.memory.endRead(this.session);
+            } catch (IOException e) {
+                // The session can't continue without its game state
+                this.session.expire();
+                throw new Exceptions().new GameReloadException(Constants.CANT_RELOAD_GAME);
+            }
+            return line;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package GameServer;
+
+import UserAccountServer.UserData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates the heap retained by each logged in session, and keeps the total
+ * within a budget by unloading the game state of idle sessions.
+ *
+ * A session's estimate covers its connection buffers and its user data (the
+ * game's words and both puzzle grids), using the usual 64-bit JVM layout with
+ * compressed references. The estimates are approximate, but scale with the
+ * same inputs as the real footprint.
+ *
+ * When the total exceeds the budget, the least recently active sessions that
+ * are waiting for input, and have been idle for a minimum time, are saved
+ * through the account microservice and their puzzle is dropped. A session's
+ * game state is loaded again as soon as its next line of input arrives,
+ * before the input is processed.
+ */
+class SessionMemory {
+    /**
+     * Saves and loads game state for sessions that are unloaded. A snapshot
+     * is taken while the session is locked, so it must not block; it is only
+     * sent by flush, after the lock is released.
+     */
+    interface Store {
+        void snapshot(UserData userData);
+
+        void flush(String username) throws IOException;
+
+        GameState load(String username) throws IOException;
+    }
+
+    // Object header, and alignment of every object
+    private static final int HEADER_BYTES = 16;
+    private static final int ALIGNMENT = 8;
+
+    // Per connection: BufferedReader's char buffer, InputStreamReader's byte
+    // buffer, and the socket, streams and session objects around them
+    private static final int CONNECTION_BYTES = 8192 * 2 + 8192 + 1024;
+
+    /**
+     * A logged in session, and whether its thread is blocked waiting for
+     * input (the only time its game state may be unloaded).
+     */
+    private static class Resident {
+        private final UserData userData;
+        private final ResponseWriter out;
+        private boolean awaitingInput;
+        // Lines of input read, so an unload can tell if the session woke up
+        // while its snapshot was being saved
+        private long reads;
+
+        private Resident(UserData userData, ResponseWriter out) {
+            this.userData = userData;
+            this.out = out;
+        }
+
+        private long estimateBytes() {
+            GameState gameState = this.userData.getGameState();
+            return CONNECTION_BYTES + this.out.getCapacity() + HEADER_BYTES + 8
+                    + stringBytes(this.userData.getUsername())
+                    + (gameState == null ? 0 : gameState.estimateRetainedBytes());
+        }
+    }
+
+    private final ConcurrentHashMap<Session, Resident> residents = new ConcurrentHashMap<>();
+    private final long budget;
+    private final long minIdleTime;
+    private final Store store;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private ScheduledExecutorService checker;
+
+    /**
+     * Constructs the accounting for a game server's sessions.
+     *
+     * @param budget      - The bytes sessions may retain before idle ones are
+     *                    unloaded.
+     * @param minIdleTime - The time (ms) a session must be idle before it may be
+     *                    unloaded.
+     * @param store       - Where unloaded game state is saved and loaded.
+     */
+    public SessionMemory(long budget, long minIdleTime, Store store) {
+        this.budget = budget;
+        this.minIdleTime = minIdleTime;
+        this.store = store;
+    }
+
+    /**
+     * Starts checking the total against the budget in the background.
+     *
+     * @param checkInterval - The delay (ms) between checks.
+     */
+    public void start(long checkInterval) {
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-memory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checker.scheduleWithFixedDelay(this::enforceBudget, checkInterval, checkInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void register(Session session, UserData userData, ResponseWriter out) {
+        this.residents.put(session, new Resident(userData, out));
+    }
+
+    public void unregister(Session session) {
+        this.residents.remove(session);
+    }
+
+    /**
+     * Gets the estimated bytes retained by all sessions, as of the last check.
+     *
+     * @return - The estimate, in bytes.
+     */
+    public long getRetainedBytes() {
+        return this.retainedBytes.get();
+    }
+
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Gets the number of sessions whose game state is unloaded.
+     *
+     * @return - The number of unloaded sessions.
+     */
+    public int getUnloadedCount() {
+        int count = 0;
+        for (Resident resident : this.residents.values()) {
+            synchronized (resident) {
+                if (resident.userData.getGameState().isUnloaded()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records that a session's thread is about to block waiting for input.
+     *
+     * @param session - The session.
+     */
+    public void beginRead(Session session) {
+        Resident resident = this.residents.get(session);
+        if (resident != null) {
+            synchronized (resident) {
+                resident.awaitingInput = true;
+            }
+        }
+    }
+
+    /**
+     * Records that a session's input has arrived, loading its game state
+     * again if it was unloaded in the meantime.
+     *
+     * @param session - The session.
+     * @throws IOException - If the game state could not be loaded.
+     */
+    public void endRead(Session session) throws IOException {
+        Resident resident = this.residents.get(session);
+        if (resident == null) {
+            return;
+        }
+        synchronized (resident) {
+            resident.awaitingInput = false;
+            resident.reads++;
+            GameState gameState = resident.userData.getGameState();
+            if (gameState.isUnloaded()) {
+                gameState.reload(this.store.load(resident.userData.getUsername()));
+                Metrics.counter("game_states_reloaded_total").increment();
+            }
+        }
+    }
+
+    /**
+     * Totals the estimates, and unloads idle sessions, least recently active
+     * first, until the total is within budget.
+     */
+    void enforceBudget() {
+        long total = 0;
+        ArrayList<Map.Entry<Session, Resident>> candidates = new ArrayList<>();
+        long idleSince = System.currentTimeMillis() - this.minIdleTime;
+        for (Map.Entry<Session, Resident> entry : this.residents.entrySet()) {
+            synchronized (entry.getValue()) {
+                total += entry.getValue().estimateBytes();
+            }
+            if (entry.getKey().getLastActivity() <= idleSince) {
+                candidates.add(entry);
+            }
+        }
+        this.retainedBytes.set(total);
+        if (total <= this.budget) {
+            return;
+        }
+
+        candidates.sort(Comparator.comparingLong(entry -> entry.getKey().getLastActivity()));
+        for (Map.Entry<Session, Resident> entry : candidates) {
+            if (total <= this.budget) {
+                break;
+            }
+            total -= unload(entry.getValue());
+        }
+        this.retainedBytes.set(total);
+    }
+
+    /**
+     * Saves and drops a session's game state, if it is waiting for input.
+     *
+     * The snapshot is taken under the session's lock, but saved without it,
+     * so the session's input isn't held up by the account microservice. The
+     * game state is only dropped if the session is still waiting for the same
+     * input once the snapshot has been saved.
+     *
+     * @return - The bytes freed.
+     */
+    private long unload(Resident resident) {
+        long reads;
+        synchronized (resident) {
+            if (!isUnloadable(resident)) {
+                return 0;
+            }
+            reads = resident.reads;
+            this.store.snapshot(resident.userData);
+        }
+        try {
+            this.store.flush(resident.userData.getUsername());
+        } catch (IOException e) {
+            // Keep the game state until it can be saved
+            return 0;
+        }
+        synchronized (resident) {
+            if (!isUnloadable(resident) || resident.reads != reads) {
+                return 0;
+            }
+            long before = resident.estimateBytes();
+            resident.userData.getGameState().unload();
+            Metrics.counter("game_states_unloaded_total").increment();
+            return before - resident.estimateBytes();
+        }
+    }
+
+    private static boolean isUnloadable(Resident resident) {
+        GameState gameState = resident.userData.getGameState();
+        return resident.awaitingInput && !gameState.isUnloaded()
+                && gameState.getState().equals(Constants.PLAY_STATE);
+    }
+
+    /**
+     * Estimates the bytes retained by a string (Latin-1 encoded).
+     *
+     * @param string - The string.
+     * @return - The estimate, in bytes.
+     */
+    static long stringBytes(String string) {
+        return align(HEADER_BYTES + 8) + align(HEADER_BYTES + string.length());
+    }
+
+    /**
+     * Estimates the bytes retained by a grid of characters.
+     *
+     * @param grid - The grid.
+     * @return - The estimate, in bytes.
+     */
+    static long gridBytes(char[][] grid) {
+        long bytes = align(HEADER_BYTES + 4L * grid.length);
+        for (char[] row : grid) {
+            bytes += align(HEADER_BYTES + 2L * row.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the bytes retained by an array of strings.
+     *
+     * @param strings - The strings.
+     * @return - The estimate, in bytes.
+     */
+    static long stringArrayBytes(String[] strings) {
+        long bytes = align(HEADER_BYTES + 4L * strings.length);
+        for (String string : strings) {
+            bytes += stringBytes(string);
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
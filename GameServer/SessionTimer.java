@@ -0,0 +1,96 @@
+package GameServer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires sessions using a single shared timer wheel, instead of a timer per
+ * connection.
+ *
+ * The wheel is a ring of buckets, each covering one tick. A session is placed
+ * in the bucket of the tick containing its deadline. Every tick, the timer
+ * checks the sessions in the current bucket: those past their deadline are
+ * expired, and the rest (i.e., those that have been active since they were
+ * placed, or whose deadline is more than one revolution away) are placed in
+ * the bucket for their new deadline. Activity itself never touches the wheel.
+ */
+class SessionTimer {
+    private final long tickMillis;
+    private final ArrayList<ArrayList<Session>> buckets;
+    private volatile long processedTick;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Constructs a session timer.
+     *
+     * @param tickMillis  - The resolution of the timer (ms).
+     * @param bucketCount - The number of ticks in one revolution of the wheel.
+     */
+    public SessionTimer(long tickMillis, int bucketCount) {
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            this.buckets.add(new ArrayList<>());
+        }
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Starts advancing the wheel in the background.
+     */
+    public void start() {
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::advance, this.tickMillis, this.tickMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts timing a session.
+     *
+     * @param session - The session to time.
+     */
+    public void schedule(Session session) {
+        // Never place a session in a bucket that has already been processed
+        long tick = Math.max(session.getDeadline() / this.tickMillis, this.processedTick + 1);
+        ArrayList<Session> bucket = this.buckets.get((int) (tick % this.buckets.size()));
+        synchronized (bucket) {
+            bucket.add(session);
+        }
+    }
+
+    /**
+     * Processes every bucket up to the current tick.
+     */
+    private void advance() {
+        long now = System.currentTimeMillis();
+        long currentTick = now / this.tickMillis;
+
+        while (this.processedTick < currentTick) {
+            long tick = this.processedTick + 1;
+            ArrayList<Session> bucket = this.buckets.get((int) (tick % this.buckets.size()));
+            ArrayList<Session> due;
+            synchronized (bucket) {
+                due = new ArrayList<>(bucket);
+                bucket.clear();
+            }
+            this.processedTick = tick;
+
+            for (Session session : due) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                if (session.getDeadline() <= now) {
+                    session.expire();
+                } else {
+                    schedule(session);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package GameServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * Client of a user account microservice running in its own process, reached
+ * over TCP. Each request opens a new connection, and is sent as an
+ * "operation;username" line carrying the current trace ID if any. Logins are
+ * claimed on behalf of this game server instance, so that they can be
+ * released if the instance stops renewing its lease.
+ */
+class TcpAccountService implements AccountService {
+    /**
+     * A request made over a new connection to the microservice.
+     */
+    private interface Call<T> {
+        T run(Socket accountSocket) throws IOException;
+    }
+
+    private final String host;
+    private final int port;
+    private final String instanceId;
+
+    /**
+     * Constructs a client of the user account microservice.
+     *
+     * @param host       - The host the microservice runs on.
+     * @param port       - The port the microservice listens on.
+     * @param instanceId - The ID of this game server instance.
+     */
+    public TcpAccountService(String host, int port, String instanceId) {
+        this.host = host;
+        this.port = port;
+        this.instanceId = instanceId;
+    }
+
+    @Override
+    public String openSession(String username) throws IOException {
+        return call("open", username, accountSocket -> readAll(
+                sendRequest(accountSocket, "open;" + username + ";" + this.instanceId, "")));
+    }
+
+    @Override
+    public String load(String username) throws IOException {
+        return call("load", username,
+                accountSocket -> readAll(sendRequest(accountSocket, "load;" + username, "")));
+    }
+
+    @Override
+    public void renewLease() throws IOException {
+        call("renew", null,
+                accountSocket -> readResult(sendRequest(accountSocket, "renew;" + this.instanceId, "")));
+    }
+
+    @Override
+    public int releaseLogins() throws IOException {
+        return call("release", null,
+                accountSocket -> readResult(sendRequest(accountSocket, "release;" + this.instanceId, "")));
+    }
+
+    @Override
+    public int logout(String username) throws IOException {
+        return call("logout", username,
+                accountSocket -> readResult(sendRequest(accountSocket,
+                        "logout;" + username + ";" + this.instanceId, "")));
+    }
+
+    /**
+     * The whole batch is sent over a single connection: a "batch;count" line,
+     * followed by each record's "operation;username" line, data and an empty
+     * line.
+     */
+    @Override
+    public int saveBatch(ArrayList<Record> records) throws IOException {
+        StringBuilder recordsBuilder = new StringBuilder();
+        for (Record record : records) {
+            recordsBuilder.append(record.operation).append(";").append(record.username).append("\n")
+                    .append(record.data).append("\n");
+        }
+
+        return call("batch", null, accountSocket -> readResult(
+                sendRequest(accountSocket, "batch;" + records.size(), recordsBuilder.toString())));
+    }
+
+    /**
+     * Makes a request over a new connection, recording it as a flight recorder
+     * event.
+     */
+    private <T> T call(String operation, String username, Call<T> call) throws IOException {
+        GameEvents.AccountOperation event = GameEvents.beginAccountOperation(operation, username);
+        try (Socket accountSocket = new Socket(this.host, this.port)) {
+            return call.run(accountSocket);
+        } catch (IOException | RuntimeException e) {
+            event.failed = true;
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private BufferedReader sendRequest(Socket accountSocket, String request, String body)
+            throws IOException {
+        BufferedWriter dataOut = new BufferedWriter(new OutputStreamWriter(accountSocket.getOutputStream()));
+        dataOut.write(Tracer.tag(request));
+        dataOut.newLine();
+        dataOut.write(body);
+        dataOut.flush();
+        return new BufferedReader(new InputStreamReader(accountSocket.getInputStream()));
+    }
+
+    private String readAll(BufferedReader in) throws IOException {
+        StringBuilder responseBuilder = new StringBuilder();
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException(Constants.CANT_COMMUNICATE_UAS);
+        }
+        responseBuilder.append(line).append("\n");
+        while ((line = in.readLine()) != null) {
+            responseBuilder.append(line).append("\n");
+        }
+        return responseBuilder.toString();
+    }
+
+    private int readResult(BufferedReader in) throws IOException {
+        try {
+            return Integer.parseInt(in.readLine());
+        } catch (NumberFormatException e) {
+            throw new IOException(Constants.CANT_COMMUNICATE_UAS);
+        }
+    }
+}
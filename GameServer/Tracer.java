@@ -0,0 +1,156 @@
+package GameServer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records timed spans of sampled requests across the game server and its
+ * microservices, in an in-memory ring buffer that can be dumped on demand.
+ *
+ * A trace is started for a sampled client command, and its ID is carried in
+ * requests to the microservices as a prefix: "@traceId request". Each service
+ * records its spans under that ID, so a trace's latency can be broken down by
+ * grepping the dumps of every service for it. Unsampled requests carry no
+ * prefix and record nothing.
+ *
+ * Each span is recorded as: traceId service name start(ms since epoch)
+ * duration(us).
+ */
+public class Tracer {
+    private static final String TRACE_PREFIX = "@";
+
+    private static final String[] ring = new String[Constants.TRACE_BUFFER_SIZE];
+    private static int next;
+
+    // Trace of the command being processed by the current thread, if sampled
+    private static final ThreadLocal<String> currentTrace = new ThreadLocal<>();
+
+    /**
+     * Starts a trace for the current thread's command, if it is sampled.
+     *
+     * @return - The trace ID, or null if the command is not sampled.
+     */
+    public static String begin() {
+        String traceId = null;
+        if (ThreadLocalRandom.current().nextDouble() < Constants.TRACE_SAMPLE_RATE) {
+            traceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        currentTrace.set(traceId);
+        return traceId;
+    }
+
+    /**
+     * Ends the current thread's trace.
+     */
+    public static void end() {
+        currentTrace.remove();
+    }
+
+    /**
+     * Gets the current thread's trace ID.
+     *
+     * @return - The trace ID, or null if there is no sampled trace.
+     */
+    public static String current() {
+        return currentTrace.get();
+    }
+
+    /**
+     * Records a span of the current thread's trace, if it is sampled.
+     *
+     * @param service    - The service the span belongs to.
+     * @param name       - The name of the span.
+     * @param startNanos - The start time, from System.nanoTime().
+     */
+    public static void record(String service, String name, long startNanos) {
+        record(current(), service, name, startNanos);
+    }
+
+    /**
+     * Records a span of a trace, if it is sampled.
+     *
+     * @param traceId    - The trace ID, or null if the trace is not sampled.
+     * @param service    - The service the span belongs to.
+     * @param name       - The name of the span.
+     * @param startNanos - The start time, from System.nanoTime().
+     */
+    public static void record(String traceId, String service, String name, long startNanos) {
+        if (traceId == null) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - startNanos;
+        long startMillis = System.currentTimeMillis() - durationNanos / 1_000_000;
+        String span = traceId + " " + service + " " + name + " " + startMillis + " "
+                + durationNanos / 1_000;
+        synchronized (ring) {
+            ring[next] = span;
+            next = (next + 1) % ring.length;
+        }
+    }
+
+    /**
+     * Prefixes a request with the current thread's trace ID, if it is sampled.
+     *
+     * @param request - The request to a microservice.
+     * @return - The request, carrying the trace ID.
+     */
+    public static String tag(String request) {
+        String traceId = current();
+        return traceId == null ? request : TRACE_PREFIX + traceId + " " + request;
+    }
+
+    /**
+     * Gets the trace ID carried by a request.
+     *
+     * @param request - The request, possibly carrying a trace ID.
+     * @return - The trace ID, or null if the request carries none.
+     */
+    public static String traceIdOf(String request) {
+        int end = request.indexOf(' ');
+        if (!request.startsWith(TRACE_PREFIX) || end < 0) {
+            return null;
+        }
+        return request.substring(TRACE_PREFIX.length(), end);
+    }
+
+    /**
+     * Removes the trace ID (if any) from a request.
+     *
+     * @param request - The request, possibly carrying a trace ID.
+     * @return - The request without the trace ID.
+     */
+    public static String strip(String request) {
+        if (traceIdOf(request) == null) {
+            return request;
+        }
+        return request.substring(request.indexOf(' ') + 1);
+    }
+
+    /**
+     * Dumps the most recent spans, oldest first, one per line.
+     *
+     * @param maxLength - The maximum length of the dump; older spans are left
+     *                  out to fit.
+     * @return - The recorded spans.
+     */
+    public static String dump(int maxLength) {
+        StringBuilder stringBuilder = new StringBuilder();
+        synchronized (ring) {
+            // Walk backwards from the newest span, then reverse the lines
+            int length = 0;
+            int first = next;
+            for (int i = 1; i <= ring.length; i++) {
+                String span = ring[(next - i + ring.length) % ring.length];
+                if (span == null || length + span.length() + 1 > maxLength) {
+                    break;
+                }
+                length += span.length() + 1;
+                first = (next - i + ring.length) % ring.length;
+            }
+            for (int i = first; length > 0; i = (i + 1) % ring.length) {
+                stringBuilder.append(ring[i]).append('\n');
+                length -= ring[i].length() + 1;
+            }
+        }
+        return stringBuilder.toString();
+    }
+}
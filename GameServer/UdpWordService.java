@@ -0,0 +1,159 @@
+package GameServer;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Client of a word database microservice running in its own process, reached
+ * over UDP. Each request is a single "command;argument"
+ * datagram, carrying the current trace ID if any.
+ *
+ * Responses carry no request ID, so a socket is only ever used by one request
+ * at a time: requests borrow an idle socket from a pool, and return it once
+ * their response has arrived. A socket whose request timed out is closed
+ * rather than returned, so its late response can't be read as the answer to
+ * a later request. The circuit breaker's probe has a socket of its own.
+ */
+class UdpWordService implements WordService {
+    private final String host;
+    private final int port;
+    private final ArrayBlockingQueue<DatagramSocket> idleSockets;
+    private DatagramSocket probeSocket;
+
+    /**
+     * Constructs a client of the word database microservice.
+     *
+     * @param host - The host the microservice runs on.
+     * @param port - The port the microservice listens on.
+     * @throws SocketException - If the client's socket could not be opened.
+     */
+    public UdpWordService(String host, int port) throws SocketException {
+        this.host = host;
+        this.port = port;
+        this.idleSockets = new ArrayBlockingQueue<>(Constants.THREAD_COUNT);
+        this.idleSockets.add(openSocket());
+    }
+
+    @Override
+    public String request(char command, String payload) throws IOException {
+        DatagramSocket socket = this.idleSockets.poll();
+        if (socket == null) {
+            socket = openSocket();
+        }
+        boolean reusable = false;
+        try {
+            String response = exchange(socket, command, payload);
+            reusable = true;
+            return response;
+        } finally {
+            if (!reusable || !this.idleSockets.offer(socket)) {
+                socket.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void probe() throws IOException {
+        if (this.probeSocket == null) {
+            this.probeSocket = openSocket();
+        }
+        try {
+            exchange(this.probeSocket, 'C', "probe");
+        } catch (IOException e) {
+            this.probeSocket.close();
+            this.probeSocket = null;
+            throw e;
+        }
+    }
+
+    private String exchange(DatagramSocket socket, char command, String payload) throws IOException {
+        GameEvents.WordServiceRequest event = new GameEvents.WordServiceRequest();
+        event.begin();
+        send(socket, command, payload, event);
+        return receive(socket, command, event);
+    }
+
+    private static DatagramSocket openSocket() throws SocketException {
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSoTimeout(Constants.UDP_TIMEOUT);
+        return socket;
+    }
+
+    /**
+     * Each request is sent from its own socket so that responses can't be
+     * confused, and all requests are sent before any response is awaited.
+     */
+    @Override
+    public String[] requestAll(char command, String[] payloads, long deadline, Runnable onResponse)
+            throws IOException {
+        DatagramSocket[] sockets = new DatagramSocket[payloads.length];
+        GameEvents.WordServiceRequest[] events = new GameEvents.WordServiceRequest[payloads.length];
+        try {
+            for (int i = 0; i < payloads.length; i++) {
+                sockets[i] = new DatagramSocket();
+                events[i] = new GameEvents.WordServiceRequest();
+                events[i].begin();
+                send(sockets[i], command, payloads[i], events[i]);
+            }
+
+            String[] responses = new String[payloads.length];
+            for (int i = 0; i < sockets.length; i++) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException(Constants.PUZZLE_GENERATION_TIMEOUT);
+                }
+                sockets[i].setSoTimeout((int) Math.min(Constants.UDP_TIMEOUT, remaining));
+                responses[i] = receive(sockets[i], command, events[i]);
+                onResponse.run();
+            }
+            return responses;
+        } finally {
+            for (DatagramSocket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    private void send(DatagramSocket socket, char command, String payload,
+            GameEvents.WordServiceRequest event) throws IOException {
+        try {
+            String request = Tracer.tag(String.valueOf(command) + ";" + payload);
+            byte[] requestBuf = request.getBytes();
+            event.opcode = command;
+            event.requestBytes = requestBuf.length;
+
+            InetAddress address = InetAddress.getByName(this.host);
+            DatagramPacket packet = new DatagramPacket(requestBuf, requestBuf.length,
+                    address, this.port);
+            socket.send(packet);
+        } catch (UnknownHostException e) {
+            throw new IOException("Could not determine IP address of host.");
+        }
+    }
+
+    private String receive(DatagramSocket socket, char command, GameEvents.WordServiceRequest event)
+            throws IOException {
+        byte[] responseBuf = new byte[Constants.BUFFER_LIMIT];
+        DatagramPacket packet = new DatagramPacket(responseBuf, responseBuf.length);
+        try {
+            socket.receive(packet);
+            event.responseBytes = packet.getLength();
+        } catch (SocketTimeoutException e) {
+            event.timedOut = true;
+            Metrics.counter(Metrics.withLabel("word_service_timeouts_total", "opcode",
+                    String.valueOf(command))).increment();
+            throw e;
+        } finally {
+            event.commit();
+        }
+        return new String(packet.getData(), 0, packet.getLength());
+    }
+}
@@ -0,0 +1,50 @@
+package GameServer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the word database microservice's recent answers, used to
+ * answer word queries while the microservice is unavailable. The least
+ * recently used word is evicted once the cache is full.
+ */
+class WordCache {
+    // Word -> whether it is in the database
+    private final LinkedHashMap<String, Boolean> words;
+
+    /**
+     * Constructs an empty word cache.
+     *
+     * @param capacity - The maximum number of words cached.
+     */
+    public WordCache(int capacity) {
+        this.words = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Records whether a word is in the database.
+     *
+     * @param word  - The word.
+     * @param found - True if the word is in the database.
+     */
+    public synchronized void put(String word, boolean found) {
+        if (!word.isEmpty()) {
+            this.words.put(word.toLowerCase(), found);
+        }
+    }
+
+    /**
+     * Gets whether a word was last known to be in the database.
+     *
+     * @param word - The word.
+     * @return - True or false, or null if the word is not cached.
+     */
+    public synchronized Boolean get(String word) {
+        return this.words.get(word.toLowerCase());
+    }
+}
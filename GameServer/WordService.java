@@ -0,0 +1,46 @@
+package GameServer;
+
+import java.io.IOException;
+
+/**
+ * Client of the word database microservice. Requests use the microservice's
+ * opcodes (e.g. 'C' to find a word), with a single argument.
+ */
+interface WordService {
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @param command - The opcode of the request.
+     * @param payload - The argument of the request.
+     * @return - The response.
+     * @throws IOException - If the microservice could not be reached in time.
+     */
+    String request(char command, String payload) throws IOException;
+
+    /**
+     * Sends a request to check whether the microservice is reachable, e.g.
+     * while its circuit breaker is open.
+     *
+     * @throws IOException - If the microservice could not be reached in time.
+     */
+    default void probe() throws IOException {
+        request('C', "probe");
+    }
+
+    /**
+     * Sends several requests with the same opcode at once, and waits for all of
+     * their responses.
+     *
+     * @param command    - The opcode of the requests.
+     * @param payloads   - The argument of each request.
+     * @param deadline   - The time (ms since epoch) by which every response
+     *                   must have arrived.
+     * @param onResponse - Run as each response arrives, e.g. to record its
+     *                   latency.
+     * @return - The response to each request, in the same order.
+     * @throws IOException - If the microservice could not be reached, or the
+     *                     deadline passed.
+     */
+    String[] requestAll(char command, String[] payloads, long deadline, Runnable onResponse)
+            throws IOException;
+}
@@ -0,0 +1,270 @@
+package LoadBalancer;
+
+import GameServer.Constants;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a TCP load balancer in front of several game server instances,
+ * which share the same word database and user account microservices.
+ * 
+ * Each client connection is relayed to a single instance for its whole
+ * duration, so a session always stays on the instance that started it. The
+ * instance is chosen by one of 2 strategies:
+ * 
+ * 1. least - the instance with the fewest open connections.
+ * 2. hash - a hash of the client's address, so that a client keeps reaching
+ * the same instance while it is up.
+ * 
+ * An instance that can't be connected to is skipped for a while, and the
+ * connection is relayed to the next instance instead.
+ * 
+ * Since every relayed connection reaches the game servers from the balancer's
+ * address, the per-address connection limit is enforced here instead.
+ */
+public class LoadBalancer {
+    private static final String USAGE = "Usage: java LoadBalancer [Port] [least|hash] [Game Port or Host:Port]...";
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final long BACKEND_RETRY_INTERVAL = 5000;
+    private static final int RELAY_BUFFER_SIZE = 8192;
+
+    private final Backend[] backends;
+    private final boolean hashing;
+    private final ExecutorService relayPool = Executors.newCachedThreadPool();
+
+    // Source address -> number of connections being relayed
+    private final ConcurrentHashMap<InetAddress, Integer> sourceConnections = new ConcurrentHashMap<>();
+
+    /**
+     * A game server instance.
+     */
+    private static class Backend {
+        private final String host;
+        private final int port;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        // Time (ms since epoch) until which the instance is skipped
+        private volatile long downUntil;
+
+        private Backend(String address) {
+            int separator = address.lastIndexOf(':');
+            this.host = separator < 0 ? "localhost" : address.substring(0, separator);
+            this.port = Integer.parseInt(address.substring(separator + 1));
+        }
+
+        private boolean isUp() {
+            return System.currentTimeMillis() >= this.downUntil;
+        }
+
+        @Override
+        public String toString() {
+            return this.host + ":" + this.port;
+        }
+    }
+
+    /**
+     * Constructs a load balancer.
+     * 
+     * @param backends - The addresses ("port" or "host:port") of the game
+     *                 server instances.
+     * @param hashing  - True to choose instances by client address, false to
+     *                 choose the least loaded instance.
+     */
+    public LoadBalancer(String[] backends, boolean hashing) {
+        this.backends = new Backend[backends.length];
+        for (int i = 0; i < backends.length; i++) {
+            this.backends[i] = new Backend(backends[i]);
+        }
+        this.hashing = hashing;
+    }
+
+    /**
+     * Starts the load balancer.
+     * 
+     * @param args - The command line arguments: the balancer's port, the
+     *             strategy, and the address of each game server instance.
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || !(args[1].equals("least") || args[1].equals("hash"))) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        String[] backends = new String[args.length - 2];
+        System.arraycopy(args, 2, backends, 0, backends.length);
+        LoadBalancer balancer = new LoadBalancer(backends, args[1].equals("hash"));
+
+        try (ServerSocket serverSocket = new ServerSocket(Integer.parseInt(args[0]))) {
+            System.out.println("LoadBalancer is running...");
+            balancer.serve(serverSocket);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Accepts client connections and relays them indefinitely.
+     * 
+     * @param serverSocket - The socket to accept client connections on.
+     * @throws IOException - If an I/O error occurs while accepting.
+     */
+    public void serve(ServerSocket serverSocket) throws IOException {
+        while (true) {
+            Socket client = serverSocket.accept();
+            this.relayPool.execute(() -> handleConnection(client));
+        }
+    }
+
+    /**
+     * Connects a client to a game server instance and relays data in both
+     * directions until either side closes the connection.
+     * 
+     * @param client - The client connection.
+     */
+    private void handleConnection(Socket client) {
+        InetAddress source = client.getInetAddress();
+        if (this.sourceConnections.merge(source, 1, Integer::sum) > Constants.SOURCE_CONNECTION_LIMIT) {
+            release(source);
+            reject(client, Constants.SOURCE_LIMIT_REACHED);
+            return;
+        }
+
+        Backend backend = null;
+        Socket upstream = null;
+        try {
+            for (int attempt = 0; attempt < this.backends.length && upstream == null; attempt++) {
+                backend = choose(source, attempt);
+                if (backend == null) {
+                    break;
+                }
+                upstream = connect(backend);
+            }
+            if (upstream == null) {
+                reject(client, Constants.SERVER_BUSY);
+                return;
+            }
+
+            backend.connections.incrementAndGet();
+            Socket server = upstream;
+            try (client; server) {
+                client.setTcpNoDelay(true);
+                this.relayPool.execute(() -> relay(client, server));
+                relay(server, client);
+            } finally {
+                backend.connections.decrementAndGet();
+            }
+        } catch (IOException e) {
+            System.out.println("Connection closed");
+        } finally {
+            release(source);
+        }
+    }
+
+    /**
+     * Chooses the instance to try for a client's connection attempt.
+     * 
+     * @param source  - The client's address.
+     * @param attempt - The number of instances already tried.
+     * @return - The instance, or null if no instance is up.
+     */
+    private Backend choose(InetAddress source, int attempt) {
+        if (this.hashing) {
+            // Try the hashed instance first, then the ones after it
+            int first = Math.floorMod(source.hashCode(), this.backends.length);
+            for (int i = attempt; i < this.backends.length; i++) {
+                Backend backend = this.backends[(first + i) % this.backends.length];
+                if (backend.isUp()) {
+                    return backend;
+                }
+            }
+            return null;
+        }
+
+        Backend least = null;
+        for (Backend backend : this.backends) {
+            if (backend.isUp() && (least == null
+                    || backend.connections.get() < least.connections.get())) {
+                least = backend;
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Connects to an instance, marking it as down if it can't be reached.
+     * 
+     * @param backend - The instance to connect to.
+     * @return - The connection, or null if the instance is down.
+     */
+    private Socket connect(Backend backend) {
+        Socket upstream = new Socket();
+        try {
+            upstream.connect(new InetSocketAddress(backend.host, backend.port), CONNECT_TIMEOUT);
+            upstream.setTcpNoDelay(true);
+            return upstream;
+        } catch (IOException e) {
+            try {
+                upstream.close();
+            } catch (IOException closeException) {
+                // Never connected
+            }
+            backend.downUntil = System.currentTimeMillis() + BACKEND_RETRY_INTERVAL;
+            System.out.println("Game server " + backend + " is down, skipping it for "
+                    + BACKEND_RETRY_INTERVAL + " ms.");
+            return null;
+        }
+    }
+
+    /**
+     * Copies data from one connection to the other until the end of the
+     * stream, then closes the other connection's output so that the other
+     * direction ends as well.
+     */
+    private void relay(Socket from, Socket to) {
+        byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            to.shutdownOutput();
+        } catch (IOException e) {
+            // Either side closed the connection
+            try {
+                from.close();
+                to.close();
+            } catch (IOException closeException) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Decrements a source's connection count, forgetting sources with none.
+     */
+    private void release(InetAddress source) {
+        this.sourceConnections.computeIfPresent(source,
+                (address, connections) -> connections == 1 ? null : connections - 1);
+    }
+
+    /**
+     * Sends a rejection message and closes the connection.
+     */
+    private void reject(Socket client, String reason) {
+        try (client) {
+            OutputStream out = client.getOutputStream();
+            out.write(("\n" + reason + " Retry in " + Constants.BUSY_RETRY_SECONDS + " s."
+                    + Constants.MESSAGE_END_DELIM + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // The client has already disconnected
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package UserAccountServer;
 
+import GameServer.CommandParser;
 import GameServer.Constants;
+import GameServer.Tracer;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -8,22 +10,36 @@ import java.net.SocketException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a server managing user accounts and handling client interactions.
+ * The open, logout, save and append operations may also be called directly
+ * from the same process (see GameServer.Embedded).
  */
 public class UserAccountServer {
 
     private static final Integer THREAD_COUNT = 20;
+    private static final String[] OPERATIONS = { "login", "logout", "load", "open", "save", "append",
+            "dump", "batch", "renew", "release" };
+    private static final String[] BATCH_OPERATIONS = { "save", "append" };
     private static List<String> userAccounts;
-    private static Set<String> loggedInUsers;
+
+    // Username -> ID of the game server instance holding the login ("" if the
+    // login was claimed without an instance ID)
+    private static Map<String, String> loggedInUsers;
+
+    // Game server instance ID -> time (ms since epoch) its lease was last
+    // renewed. The logins of an instance whose lease expires are released.
+    private static final Map<String, Long> instanceLeases = new HashMap<>();
 
     /**
      * Static initializer block to load user accounts from file.
      */
     static {
         loadUserAccounts();
-        loggedInUsers = new HashSet<>();
+        loggedInUsers = new HashMap<>();
     }
 
     /**
@@ -37,6 +53,10 @@ public class UserAccountServer {
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             System.out.println("UserAccountServer is running...");
             ExecutorService threadPool = Executors.newFixedThreadPool(THREAD_COUNT);
+            ScheduledExecutorService leaseReaper = Executors.newSingleThreadScheduledExecutor();
+            leaseReaper.scheduleWithFixedDelay(UserAccountServer::reapExpiredLeases,
+                    Constants.LOGIN_LEASE_TIMEOUT, Constants.LOGIN_LEASE_TIMEOUT / 2,
+                    TimeUnit.MILLISECONDS);
             while (true) {
                 Socket socket = serverSocket.accept();
                 // System.out.println("Connection established with game server.");
@@ -72,19 +92,20 @@ public class UserAccountServer {
      * Checks if a user is already registered
      * 
      * @param username - The username to check for registration
+     * @param instance - The ID of the game server instance claiming the login.
      * @return - 1 if the user is registered and not currently logged in,
      *         - 2 if the user is not registered and not logged in.
      *         - 0 if the user is not logged in and not registered.
      */
-    private static synchronized int login(String username) {
+    private static synchronized int login(String username, String instance) {
         loadUserAccounts();
         if (userAccounts.contains(username.trim()) &&
-                !loggedInUsers.contains(username.trim())) {
-            loggedInUsers.add(username);
+                !loggedInUsers.containsKey(username.trim())) {
+            claimLogin(username, instance);
             return 1;
         } else if (!userAccounts.contains(username.trim()) &&
-                !loggedInUsers.contains(username.trim())) {
-            loggedInUsers.add(username);
+                !loggedInUsers.containsKey(username.trim())) {
+            claimLogin(username, instance);
             return 2;
         } else {
             return 0;
@@ -92,14 +113,30 @@ public class UserAccountServer {
     }
 
     /**
-     * Logs out a user if they are currently logged in.
+     * Records a user's login as held by a game server instance, renewing the
+     * instance's lease.
+     */
+    private static void claimLogin(String username, String instance) {
+        loggedInUsers.put(username, instance);
+        if (!instance.isEmpty()) {
+            renewLease(instance);
+        }
+    }
+
+    /**
+     * Logs out a user if they are currently logged in through the given game
+     * server instance. A login held by another instance is left alone, e.g.
+     * when an instance whose lease expired ends a session after the user has
+     * logged in again elsewhere.
      * 
      * @param username - The username of the account to log out.
+     * @param instance - The ID of the game server instance logging the user
+     *                 out, or "" if it doesn't hold a lease.
      * @return - 1 if the user was logged out successfully.
-     *         - 0 if the user was not logged in.
+     *         - 0 if the user was not logged in through the instance.
      */
-    private static synchronized int logout(String username) {
-        if (loggedInUsers.contains(username.trim())) {
+    public static synchronized int logout(String username, String instance) {
+        if (instance.equals(loggedInUsers.get(username.trim()))) {
             loggedInUsers.remove(username.trim());
             return 1;
         } else {
@@ -108,7 +145,95 @@ public class UserAccountServer {
     }
 
     /**
-     * Loads user data from the file associated with the specified username.
+     * Renews a game server instance's lease on its logins. Instances renew
+     * their lease periodically; if an instance stops (e.g. it crashed), its
+     * logins are released once the lease expires.
+     * 
+     * @param instance - The ID of the game server instance.
+     * @return - 1.
+     */
+    public static synchronized int renewLease(String instance) {
+        instanceLeases.put(instance, System.currentTimeMillis());
+        return 1;
+    }
+
+    /**
+     * Releases every login held by a game server instance, e.g. when it
+     * restarts after a crash, and ends its lease.
+     * 
+     * @param instance - The ID of the game server instance.
+     * @return - The number of logins released.
+     */
+    public static synchronized int release(String instance) {
+        int released = 0;
+        Iterator<Map.Entry<String, String>> iterator = loggedInUsers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().equals(instance)) {
+                iterator.remove();
+                released++;
+            }
+        }
+        instanceLeases.remove(instance);
+        return released;
+    }
+
+    /**
+     * Releases the logins of every game server instance whose lease has
+     * expired.
+     */
+    private static synchronized void reapExpiredLeases() {
+        long expiry = System.currentTimeMillis() - Constants.LOGIN_LEASE_TIMEOUT;
+        for (String instance : new ArrayList<>(instanceLeases.keySet())) {
+            if (instanceLeases.get(instance) < expiry) {
+                System.out.println("Lease of game server " + instance + " expired, released "
+                        + release(instance) + " login(s).");
+            }
+        }
+    }
+
+    /**
+     * Opens a session for a user in a single round trip: claims the login and,
+     * if successful, loads the user's data.
+     * 
+     * Unlike login, the user directory is not rescanned; only the user's own
+     * data file is checked to determine whether the account is new.
+     * 
+     * @param username - The username of the account to open a session for.
+     * @param instance - The ID of the game server instance claiming the login,
+     *                 or "" if it doesn't hold a lease.
+     * @return - "0" if the user is already logged in, otherwise the login
+     *         result (1 for an existing user, 2 for a new user) followed by a
+     *         newline and the user data.
+     * @throws IOException - If the user data could not be loaded. The login
+     *                     claim is released before the exception propagates.
+     */
+    public static synchronized String openSession(String username, String instance)
+            throws IOException {
+        username = username.trim();
+        if (loggedInUsers.containsKey(username)) {
+            return "0";
+        }
+
+        File userDataFile = new File(Constants.USER_DATA_DIRECTORY + username + ".txt");
+        int loginResult = userDataFile.exists() ? 1 : 2;
+        claimLogin(username, instance);
+
+        try {
+            String userDataString = load(username);
+            if (loginResult == 2) {
+                userAccounts.add(username);
+            }
+            return loginResult + "\n" + userDataString;
+        } catch (IOException e) {
+            loggedInUsers.remove(username);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads user data from the file associated with the specified username,
+     * followed by any events appended to the user's event log since the data
+     * was saved.
      * If the file does not exist, a new file is created with default user data.
      * 
      * @param username - The username for which to load user data.
@@ -118,7 +243,7 @@ public class UserAccountServer {
      * @throws IOException - If an I/O error occurs while creating the file or
      *                     reading from it.
      */
-    private static synchronized String load(String username) throws IOException {
+    public static synchronized String load(String username) throws IOException {
         String filePath = Constants.USER_DATA_DIRECTORY + username + ".txt";
         File userDatafile = new File(filePath);
         try {
@@ -133,29 +258,67 @@ public class UserAccountServer {
             throw new IOException(Constants.CANT_CREATE_USER_FILE);
         }
 
+        StringBuilder userDataBuilder = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new FileReader(userDatafile))) {
-            StringBuilder userDataBuilder = new StringBuilder();
             String line;
             while ((line = reader.readLine()) != null) {
                 userDataBuilder.append(line).append("\n");
             }
-            return userDataBuilder.toString();
         }
+
+        // Events appended since the snapshot are replayed by the game server
+        File eventLogFile = new File(Constants.USER_DATA_DIRECTORY + username + ".log");
+        if (eventLogFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(eventLogFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    userDataBuilder.append(line).append("\n");
+                }
+            }
+        }
+        return userDataBuilder.toString();
     }
 
     /**
-     * Saves user data associated with the specified username to a file.
+     * Saves user data associated with the specified username to a file. The
+     * saved data is a snapshot that supersedes the user's event log, so the
+     * event log is discarded.
      * 
      * @param username - The username for which to save user data.
      * @param data     - The user data to save.
      * @return - 1 if the user data was saved successfully.
      *         - 0 if an error occurred while saving.
      */
-    private static synchronized int save(String username, String data) {
+    public static synchronized int save(String username, String data) {
         File userDataFile = new File(Constants.USER_DATA_DIRECTORY +
                 username + ".txt");
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(userDataFile))) {
             writer.write(data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+
+        File eventLogFile = new File(Constants.USER_DATA_DIRECTORY + username + ".log");
+        if (eventLogFile.exists() && !eventLogFile.delete()) {
+            return 0;
+        }
+        return 1;
+    }
+
+    /**
+     * Appends events to the event log associated with the specified username.
+     * 
+     * @param username - The username for which to append events.
+     * @param events   - The events to append, one per line.
+     * @return - 1 if the events were appended successfully.
+     *         - 0 if an error occurred while appending.
+     */
+    public static synchronized int append(String username, String events) {
+        File eventLogFile = new File(Constants.USER_DATA_DIRECTORY +
+                username + ".log");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(eventLogFile, true))) {
+            writer.write(events);
             return 1;
         } catch (IOException e) {
             e.printStackTrace();
@@ -163,10 +326,109 @@ public class UserAccountServer {
         }
     }
 
+    /**
+     * Saves a batch of user data records sent over a single connection. Each
+     * record consists of a "save;username" or "append;username" header line
+     * followed by the user data or events, terminated with an empty line.
+     * 
+     * @param in    - The reader positioned at the first record.
+     * @param count - The number of records in the batch.
+     * @return - The number of records that were saved successfully.
+     * @throws IOException - If an I/O error occurs while reading the records.
+     */
+    private static int saveBatch(BufferedReader in, int count) throws IOException {
+        int saved = 0;
+        for (int i = 0; i < count; i++) {
+            String header = in.readLine();
+            if (header == null) {
+                break;
+            }
+            String data = readData(in);
+            int separator = CommandParser.fieldEnd(header, 0);
+            String operation = CommandParser.lookupTrimmed(header, 0, separator, BATCH_OPERATIONS);
+            String username = parseUsername(header, separator);
+            if (operation != null && username != null) {
+                switch (operation) {
+                    case "save" -> saved += save(username, data);
+                    case "append" -> saved += append(username, data);
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Parses the number of records in a "batch;count" request.
+     * 
+     * @param argument - The argument following the operation.
+     * @return - The number of records, or -1 if it is not a non-negative
+     *         integer.
+     */
+    private static int parseCount(String argument) {
+        try {
+            return Math.max(-1, Integer.parseInt(argument));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the username (or other argument) following the operation in an
+     * "operation;username" or "operation;username;instance" request.
+     * 
+     * @param request   - The request line.
+     * @param separator - The index of the separator after the operation.
+     * @return - The trimmed username, or null if the request does not consist
+     *         of 2 or 3 fields.
+     */
+    private static String parseUsername(String request, int separator) {
+        if (separator + 1 >= request.length()) {
+            return null;
+        }
+        int end = CommandParser.fieldEnd(request, separator + 1);
+        if (end < request.length() && CommandParser.fieldEnd(request, end + 1) != request.length()) {
+            return null;
+        }
+        return request.substring(separator + 1, end).trim();
+    }
+
+    /**
+     * Gets the ID of the game server instance at the end of an
+     * "operation;username;instance" request.
+     * 
+     * @param request   - The request line.
+     * @param separator - The index of the separator after the operation.
+     * @return - The trimmed instance ID, or "" if the request has none.
+     */
+    private static String parseInstance(String request, int separator) {
+        int end = CommandParser.fieldEnd(request, separator + 1);
+        return end < request.length() ? request.substring(end + 1).trim() : "";
+    }
+
+    /**
+     * Reads user data lines until an empty line or the end of the stream.
+     * 
+     * @param in - The reader to read the user data from.
+     * @return - The user data, with each line terminated by a newline.
+     * @throws IOException - If an I/O error occurs while reading.
+     */
+    private static String readData(BufferedReader in) throws IOException {
+        StringBuilder dataBuilder = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            dataBuilder.append(line).append("\n");
+        }
+        return dataBuilder.toString();
+    }
+
     /**
      * Handles a connection with a client socket by performing requested operations
      * such as login,
-     * logout, load, or save.
+     * logout, load, open, save, append, or a batch of saves. Game server
+     * instances also renew or release their lease on their logins. A request
+     * may carry a trace ID, in which case the operation is recorded as a span
+     * of that trace. The recorded spans are returned by the "dump;traces"
+     * request.
      * 
      * @param socket - The socket representing the connection with the client.
      */
@@ -178,22 +440,36 @@ public class UserAccountServer {
             String stringResult = "";
 
             String input = in.readLine();
-            String[] parts = input.split(";");
-            if (parts.length == 2) {
-                String operation = parts[0].trim();
-                String username = parts[1].trim();
+            String traceId = Tracer.traceIdOf(input);
+            long start = System.nanoTime();
+
+            String request = Tracer.strip(input);
+            int separator = CommandParser.fieldEnd(request, 0);
+            String username = parseUsername(request, separator);
+            if (username != null) {
+                String operation = CommandParser.lookupTrimmed(request, 0, separator, OPERATIONS);
+                if (operation == null) {
+                    operation = "unknown";
+                }
 
+                String instance = parseInstance(request, separator);
                 switch (operation) {
-                    case "login" -> result = login(username);
-                    case "logout" -> result = logout(username);
+                    case "login" -> result = login(username, instance);
+                    case "logout" -> result = logout(username, instance);
                     case "load" -> stringResult = load(username);
-                    case "save" -> {
-                        StringBuilder dataBuilder = new StringBuilder();
-                        String line;
-                        while ((line = in.readLine()) != null && !line.isEmpty()) {
-                            dataBuilder.append(line).append("\n");
+                    case "open" -> stringResult = openSession(username, instance);
+                    case "renew" -> result = renewLease(username);
+                    case "release" -> result = release(username);
+                    case "save" -> result = save(username, readData(in));
+                    case "append" -> result = append(username, readData(in));
+                    case "dump" -> stringResult = Tracer.dump(Integer.MAX_VALUE);
+                    case "batch" -> {
+                        int count = parseCount(username);
+                        if (count < 0) {
+                            stringResult = "-1";
+                        } else {
+                            result = saveBatch(in, count);
                         }
-                        result = save(username, dataBuilder.toString());
                     }
                 }
 
@@ -204,6 +480,7 @@ public class UserAccountServer {
                 }
                 out.newLine();
                 out.flush();
+                Tracer.record(traceId, "UserAccountServer", operation, start);
             }
         } catch (SocketException e) {
             System.out.println("Connection closed");